@@ -1,67 +1,257 @@
 package yashdoshi.eightfoldchallenge;
 import java.io.*;
-import java.sql.Timestamp;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * BasicAPI Class is used to iterate over all the Sanitized file one by one (for each thread/user-request) to insert
- * into the HashMap<ThreadId,HashMap<ProcessID, List<Interval>>>. This map will be limited to number of threads/
- * user-requests which is given to be at the most 1000.
- * Given the time range (t1,t2), all the entries of the map are iterated to check if a particular thread/user-request
- * exists in that range.
+ * their intervals into an IntervalStore, which keeps the intervals of every thread and process in primitive columns.
+ * Given the time range (t1,t2), the interval index over the store is queried to check if a particular
+ * thread/user-request exists in that range.
  * Along with that , the Average and Standard deviation of lifetime of all the threads are calculated and written in a
  * output file.
+ * The intervals are loaded from the binary sidecar written by SanitizeFiles when it is up to date with the sanitized
+ * files, which avoids parsing all the sanitized logs again.
  * Sanitized file path : Logs/sanitizedLogs
+ * With --segments the sanitized logs are read from the SegmentStore, and every active thread is returned as a
+ * LogHandle to its logs in the store instead of the path of its file.
+ * Segment store path : Logs/segmentStore
+ * With --compressed the sanitized files are read from the blocks of the CompressedLogWriter, over --segments.
+ * Compressed sanitized files path : Logs/compressedLogs
+ * With --partitions the intervals are read from the time partitions written by SanitizeFiles --partitions, over both
+ * of them. Only the metadata of the partitions is loaded, a query reads the intervals of the partitions overlapping
+ * its time range.
+ * Time partitions path : Logs/partitions
  * BonusAPI part 2 result : Logs/BonusAPI-Part2.txt
+ * The peak and average concurrent threads of the same time range, for all the threads and for every process, are
+ * answered from the ConcurrencyTimeline written by SanitizeFiles, when it exists.
+ * Concurrency timeline : Logs/concurrency.idx
+ * Concurrency result : Logs/BasicAPI-concurrency.txt
  */
 public class BasicAPI {
 
-    private static HashMap<String, HashMap<Integer, List<Interval>>> map;
-    private static double averageLifetime = 0.0;
-    private static long lifetimeSeconds = 0l;
-    private static int count = 0;
-    private static double stdDev = 0.0;
-    private static List<Double> lifeTimes = new ArrayList<>();
+    private static IntervalStore store;
+    private static IntervalIndex index;
+    /**
+     * Time partitions queried instead of the index, null unless the intervals are loaded from partitions
+     */
+    private static TimePartitions partitions;
+    /**
+     * Lifetime statistics of the threads of every process and of every thread name, the statistics of all the
+     * threads are merged from the statistics of the processes
+     */
+    private static HashMap<Integer, LifetimeStats> processStats = new HashMap<>();
+    private static HashMap<String, LifetimeStats> threadNameStats = new HashMap<>();
+    private static LogParser parser = new LogParser();
+    /**
+     * Queries read the store and the index while the follow mode of the QueryServer adds new intervals
+     */
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private static String intervalsPath = "Resources/intervals.idx";
+    private static String timelinePath = "Resources/concurrency.idx";
+    static final String NO_TIMELINE = "No up to date concurrency timeline, run SanitizeFiles first";
+    /**
+     * Concurrent threads of every second, null if SanitizeFiles didn't write the timeline or it is stale. It is read
+     * again when SanitizeFiles writes it, e.g. after every poll of the follow mode.
+     */
+    private static ConcurrencyTimeline timeline;
+    private static String timelineFolder;
+    private static long timelineModified;
+    /**
+     * Layout of the sanitized logs the references of the active threads point to, decided when they are loaded
+     */
+    private static volatile LogLayout layout;
+    /**
+     * Results of the last queried time ranges, invalidated by the intervals added or ended by the follow mode
+     */
+    private static final QueryCache cache = new QueryCache(1024, 1 << 20);
 
     /**
      * The main method is used accept input from the user for the range of timestamp and call the methods to get the
      * Active threads and also to calculate the Average and Standard deviation of the lifetime of all threads.
-     * @param args No input
+     * @param args --segments to read the sanitized logs from the SegmentStore, --partitions to query the time
+     *             partitions, --compressed to read the compressed sanitized files, --batch <file> to query all the
+     *             ranges of the file, t1 and t2 on separate lines, instead of a single range from the input
      * @throws IOException In case there is an issue while reading, writing and searching file/directory operations.
      * @throws ParseException Parsing the string(Log) in a particular format especially for the Date could create an
      * issue.
      */
     public static void main(String[] args) throws IOException, ParseException {
-        String sanitizedLogFilesPath = "Resources/sanitizedLogs";
-        map = new HashMap<>();
-        readSanitizedLogFiles(sanitizedLogFilesPath);
-
-        Scanner sc = new Scanner(System.in);
-        System.out.println("Please enter startTime(t1) and endTime(t2) on separate lines");
-        String t1 = sc.nextLine();
-        String t2 = sc.nextLine();
-        getActiveThreads(t1,t2, sanitizedLogFilesPath);
-        File f = new File("Resources/BonusAPI-Part2.txt");
-        BufferedWriter writer = new BufferedWriter(new FileWriter(f));
+        String sanitizedLogFilesPath = Arrays.asList(args).contains("--segments") ? "Resources/segmentStore"
+                : "Resources/sanitizedLogs";
+        if(Arrays.asList(args).contains("--compressed")) {
+            sanitizedLogFilesPath = "Resources/compressedLogs";
+        }
+        if(Arrays.asList(args).contains("--partitions")) {
+            sanitizedLogFilesPath = "Resources/partitions";
+            loadPartitions(sanitizedLogFilesPath);
+        }
+        else {
+            loadIntervals(sanitizedLogFilesPath);
+        }
+
+        int batch = Arrays.asList(args).indexOf("--batch");
+        File f;
+        BufferedWriter writer;
+        List<String[]> ranges = new ArrayList<>();
+        if(batch >= 0 && batch + 1 < args.length) {
+            //Every two lines of the file are a range
+            try(BufferedReader reader = new BufferedReader(new FileReader(args[batch + 1]))) {
+                String t1 = reader.readLine();
+                while(t1 != null) {
+                    String t2 = reader.readLine();
+                    if(t2 == null) {
+                        break;
+                    }
+                    if(!t1.trim().isEmpty()) {
+                        ranges.add(new String[] {t1.trim(), t2.trim()});
+                    }
+                    t1 = reader.readLine();
+                }
+            }
+            f = new File("Resources/BasicAPI-batch.log");
+            writer = new BufferedWriter(new FileWriter(f));
+            getActiveThreadsBatch(ranges, sanitizedLogFilesPath, writer);
+            writer.close();
+        }
+        else {
+            Scanner sc = new Scanner(System.in);
+            System.out.println("Please enter startTime(t1) and endTime(t2) on separate lines");
+            System.out.println("(the concurrent threads are counted over the whole seconds of t1 and t2)");
+            String t1 = sc.nextLine().trim();
+            String t2 = sc.nextLine().trim();
+            f = new File("Resources/BasicAPI.log");
+            writer = new BufferedWriter(new FileWriter(f));
+            getActiveThreads(t1,t2, sanitizedLogFilesPath, writer);
+            writer.close();
+            ranges.add(new String[] {t1, t2});
+        }
+        f = new File("Resources/BasicAPI-concurrency.txt");
+        writer = new BufferedWriter(new FileWriter(f));
+        for(String[] range : ranges) {
+            if(!writeConcurrency(range[0], range[1], writer)) {
+                writer.append(NO_TIMELINE + "\n");
+                break;
+            }
+        }
+        writer.close();
+        f = new File("Resources/BonusAPI-Part2.txt");
+        writer = new BufferedWriter(new FileWriter(f));
         getAverageLifeTime(writer);
         getStandardDeviation(writer);
+        getLifetimeBreakdown(writer);
         writer.close();
     }
 
     /**
-     * This method is used to iterate over all the files in the sanitized folder and read each one by one.
+     * Setter for the binary sidecar of the intervals, used to query other dumps than the one in Resources/
+     * @param path file of the sidecar
+     */
+    public static void setIntervalsPath(String path) {
+        intervalsPath = path;
+    }
+
+    /**
+     * Setter for the concurrency timeline, used to query other dumps than the one in Resources/
+     * @param path file of the timeline
+     */
+    public static void setTimelinePath(String path) {
+        timelinePath = path;
+    }
+
+    /**
+     * This method loads the intervals into the store and builds the interval index. It is called once, after which any
+     * number of time ranges can be queried. The intervals are read from the binary sidecar written by SanitizeFiles,
+     * the sanitized files are only read if the sidecar is missing or stale.
+     * @param folderPath contains the list of all the sanitized files
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static void loadIntervals(String folderPath) throws IOException, ParseException {
+        processStats = new HashMap<>();
+        threadNameStats = new HashMap<>();
+        partitions = null;
+        cache.clear();
+        readTimeline(folderPath);
+        layout = new LogLayout(folderPath);
+        store = IntervalSidecar.readStore(new File(intervalsPath),
+                IntervalSidecar.fingerprint(new File(folderPath)));
+        if(store != null) {
+            for(int slot = 0; slot < store.size(); slot++) {
+                if(store.hasEndTime(slot)) {
+                    addLifetime(store.getProcessId(slot), store.getStartTime(slot), store.getEndTime(slot),
+                            store.getThreadName(slot));
+                }
+            }
+        }
+        else {
+            store = new IntervalStore();
+            readSanitizedLogFiles(folderPath);
+            store.trim();
+        }
+        buildIndex();
+    }
+
+    /**
+     * This method loads the metadata of the time partitions, the intervals of a partition are only read by the queries
+     * overlapping it. The lifetime statistics are added from one partition at a time, every interval belongs to the
+     * partition it starts in.
+     * @param folderPath folder of the time partitions
+     * @throws IOException if the sidecar of a partition is missing or stale
+     */
+    public static void loadPartitions(String folderPath) throws IOException {
+        processStats = new HashMap<>();
+        threadNameStats = new HashMap<>();
+        store = new IntervalStore();
+        cache.clear();
+        readTimeline(folderPath);
+        buildIndex();
+        partitions = new TimePartitions(folderPath, TimePartitions.HOUR);
+        for(TimePartitions.Partition partition : partitions.getPartitions()) {
+            IntervalStore intervals = partitions.readStore(partition);
+            for(int slot = 0; slot < intervals.size(); slot++) {
+                if(intervals.hasEndTime(slot)) {
+                    addLifetime(intervals.getProcessId(slot), intervals.getStartTime(slot),
+                            intervals.getEndTime(slot), intervals.getThreadName(slot));
+                }
+            }
+        }
+    }
+
+    /**
+     * This method is used to iterate over all the files in the sanitized folder and read each one by one. The logs of
+     * a SegmentStore are read thread by thread with their handles.
      * @param folderPath contains the list of all the sanitized files
      * @throws IOException
      * @throws ParseException
      */
     private static void readSanitizedLogFiles(String folderPath) throws IOException, ParseException {
+        if(SegmentStore.exists(folderPath)) {
+            SegmentStore store = SegmentStore.open(folderPath);
+            for(long threadId : store.getThreadIds()) {
+                byte[] logs = store.getHandle(threadId).read();
+                //Same encoding as a FileReader
+                readLogs(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(logs))));
+            }
+            return;
+        }
 
         File folder = new File(folderPath);
         File[] listOfFiles = folder.listFiles();
         for(File f : listOfFiles) {
-            readSingleFile(f);
+            String name = f.getName();
+            if(name.endsWith(CompressedLogWriter.BLOCK_FILE)) {
+                String threadId = name.substring(0, name.length() - CompressedLogWriter.BLOCK_FILE.length());
+                byte[] logs = CompressedLogReader.readAll(folderPath, Long.parseLong(threadId));
+                readLogs(new BufferedReader(new InputStreamReader(new ByteArrayInputStream(logs))));
+            }
+            else if(!name.endsWith(CompressedLogWriter.INDEX_FILE)) {
+                readSingleFile(f);
+            }
         }
 
     }
@@ -73,153 +263,461 @@ public class BasicAPI {
      * @throws ParseException
      */
     private static void readSingleFile(File f) throws IOException, ParseException {
-        BufferedReader reader = new BufferedReader(new FileReader(f));
+        readLogs(new BufferedReader(new FileReader(f)));
+    }
 
+    /**
+     * This method is used to read the sanitized logs of a single thread/user-request log by log.
+     * @param reader reader of the logs, closed at the end
+     * @throws IOException
+     * @throws ParseException
+     */
+    private static void readLogs(BufferedReader reader) throws IOException, ParseException {
         String s = reader.readLine();
         while(s != null) {
-            while(s.indexOf("::") == -1) {
-                s = reader.readLine();
+            //Lines after the first line of a log are part of its log statement
+            if(LogParser.isLogStart(s)) {
+                storeLogInterval(s);
             }
-            storeLogInterval(s);
             s = reader.readLine();
         }
         reader.close();
     }
 
     /**
-     * This method parses the Log to get the threadId, processId and Timestamp. If the logStatement contains the
-     * Start delimiter, then it's start Interval is added to the map for that process Id.
-     * If the logStatement contains  the End delimter, then it's end Interval is added to the map for that processId.
+     * This method parses the Log to get the threadId, processId and Timestamp with the LogParser, the log statement
+     * is compared in place without creating a String. If the logStatement contains the
+     * Start delimiter, then it's start Interval is added to the store for that process Id.
+     * If the logStatement contains  the End delimter, then it's end Interval is added to the store for that processId.
      * @param s
      * @throws ParseException
      */
     private static void storeLogInterval(String s) throws ParseException {
-        int firstSplit = s.indexOf(':');
-        int secondSplit = s.indexOf("::");
-        int firstSpace = s.indexOf(' ');
-        int secondSpace = s.indexOf(' ',s.indexOf(' ')+1);
-        int lastSplit = s.indexOf('-', secondSpace+1);
-        int pId = Integer.parseInt(s.substring(0,firstSplit));
-        String threadId = s.substring(firstSplit+1,secondSplit);
-        String logDate = s.substring(firstSpace+1, lastSplit-1);
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss.SSS");
-        Date parsedDate = dateFormat.parse(logDate);
-        Timestamp timestamp = new java.sql.Timestamp(parsedDate.getTime());
+        parser.parse(s);
+        if(parser.statementEquals(s, "**START**")) {
+            storeInterval(parser.threadId, parser.processId, parser.timestamp,
+                    s.substring(parser.threadNameStart, parser.threadNameEnd), true);
+        }
+        else if(parser.statementEquals(s, "**END**")) {
+            storeInterval(parser.threadId, parser.processId, parser.timestamp, null, false);
+        }
+    }
 
-        String logStatement = s.substring(lastSplit+1).trim();
-        if(logStatement.equals("**START**")) {
-            //ThreadId doesn't exist in the map.
-            if(!map.containsKey(threadId)) {
-                map.put(threadId, new HashMap<>());
+    /**
+     * This method adds a new interval to the store when the thread starts and sets the end time of its last interval
+     * when the thread ends, unless it has already ended. The lifetime of the thread is added for the Average and Standard deviation when it ends,
+     * intervals without an end time are ignored for calculating them.
+     * @param threadId thread of the log
+     * @param pId process of the log
+     * @param timestamp timestamp of the log
+     * @param threadName name of the thread, only used for the Start delimiter
+     * @param start true for the Start delimiter, false for the End delimiter
+     */
+    private static void storeInterval(long threadId, int pId, long timestamp, String threadName, boolean start) {
+        if(start) {
+            //The interval starts now and its endTime is open.
+            int slot = store.add(threadId, pId, timestamp, Interval.OPEN, threadName);
+            //Intervals added after the index was built are pending in the index
+            if(index != null) {
+                index.add(slot);
             }
-            //Get the HashMap<ProcessId, List<Intervals>>
-            HashMap<Integer, List<Interval>> processes = map.get(threadId);
-            if(!processes.containsKey(pId)) {
-                processes.put(pId, new ArrayList<>());
+            cache.intervalAdded(timestamp, Interval.OPEN);
+
+        }
+        else {
+            //End closes the last interval of the thread on the process if it is open, as defined by LivePairs
+            int slot = store.getLastSlot(threadId, pId);
+            if(slot == LongIntMap.MISSING || store.hasEndTime(slot)) {
+                return;
             }
-            //Get the list and update the startTime in the interval and endTime to be null.
-            List<Interval> interval = processes.get(pId);
-            Interval previous = new Interval(timestamp,null);
-            interval.add(previous);
+            long startTime = store.getStartTime(slot);
+            cache.intervalEnded(startTime, store.getEndTime(slot), timestamp);
+            store.setEndTime(slot, timestamp);
+            addLifetime(pId, startTime, timestamp, store.getThreadName(slot));
 
         }
-        else if(logStatement.equals("**END**")) {
-            //End cannot be encountered before the Start of the Thread, so no need to check if it exists in the map
-            HashMap<Integer, List<Interval>> processes = map.get(threadId);
-            List<Interval> intervals = processes.get(pId);
-            //A thread cannot start on the same process, unless it is stopped. So update the last interval only.
-            Interval interval = intervals.get(intervals.size()-1);
-            interval.setEndTime(timestamp);
+    }
 
+    /**
+     * This method adds the lifetime of an ended interval to the statistics of its process and of its thread name.
+     * @param pId process of the interval
+     * @param startTime start time of the interval
+     * @param endTime end time of the interval
+     * @param threadName name of the thread, null if it is not known
+     */
+    private static void addLifetime(int pId, long startTime, long endTime, String threadName) {
+        double seconds = (endTime - startTime) / 1000.0;
+        LifetimeStats stats = processStats.get(pId);
+        if(stats == null) {
+            stats = new LifetimeStats();
+            processStats.put(pId, stats);
+        }
+        stats.add(seconds);
+        if(threadName == null) {
+            threadName = "unknown";
         }
+        stats = threadNameStats.get(threadName);
+        if(stats == null) {
+            stats = new LifetimeStats();
+            threadNameStats.put(threadName, stats);
+        }
+        stats.add(seconds);
+    }
+
+    /**
+     * This method is called for every log sanitized by the follow mode of SanitizeFiles, which runs in the same JVM as
+     * the QueryServer. The intervals of the new logs are added to the store and the index while no query is running.
+     * The index is built again once too many intervals are pending.
+     * @param log log polled from the merge
+     */
+    public static void ingest(LogLine log) {
+        boolean start = log.statementEquals("**START**");
+        if(!start && !log.statementEquals("**END**")) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            storeInterval(log.getThreadId(), log.getProcessId(), log.getTimestamp(),
+                    start ? log.getThreadName() : null, start);
+            if(index.pendingSize() > Math.max(1024, index.size() / 8)) {
+                index = new IntervalIndex(store);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method builds the interval index once all the sanitized files are read.
+     */
+    private static void buildIndex() {
+        index = new IntervalIndex(store);
     }
 
     /**
-     * This method is used to provide the Active threads in this given time range. Iterate over the entrySet of the map,
-     * Check if the interval lies in between the range, add the processId in a set.
+     * This method is used to provide the Active threads in this given time range. The interval index returns every
+     * interval which lies in between the range, the processId of the interval is added in a set for its thread.
+     * The active threads of the range are cached, a range queried again is answered from the cache until an interval
+     * active in it is added or ended. The latency of the query is added to the PipelineMetrics.
      * @param t1 start timestamp provided by the user
      * @param t2 end timestamp provided by the user
-     * @param path reference to the file the user-request/thread is stored in.
+     * @param path reference to the folder of the user-request/thread files, or of the SegmentStore
+     * @param writer Writer the active threads are written to, one thread per line
+     * @return number of active threads in the time range
      * @throws ParseException
      * @throws IOException
      */
-    private static void getActiveThreads(String t1, String t2, String path) throws ParseException, IOException {
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss,SSS");
-        Date date1 = dateFormat.parse(t1);
-        Timestamp startTime = new java.sql.Timestamp(date1.getTime());
-        Date date2 = dateFormat.parse(t2);
-        Timestamp endTime = new java.sql.Timestamp(date2.getTime());
-        if(startTime.after(endTime)) {
-            Timestamp t = startTime;
+    public static int getActiveThreads(String t1, String t2, String path, Writer writer)
+            throws ParseException, IOException {
+        long begin = System.nanoTime();
+        long startTime = LogParser.parseTimestamp(t1);
+        long endTime = LogParser.parseTimestamp(t2);
+        if(startTime > endTime) {
+            long t = startTime;
             startTime = endTime;
             endTime = t;
         }
-        int numberOfActiveThreads = 0;
-        File f = new File("Resources/BasicAPI.log");
-        BufferedWriter writer = new BufferedWriter(new FileWriter(f));
-
-        for(Map.Entry threads : map.entrySet()) {
-
-            String threadId = (String) threads.getKey();
-            HashMap<Integer, List<Interval>> processes = (HashMap<Integer, List<Interval>>) threads.getValue();
-            HashSet<Integer> activeProcesses = new HashSet<>();
-
-            for(Map.Entry process : processes.entrySet()) {
-                int processId = (int) process.getKey();
-                List<Interval> intervals = (List<Interval>) process.getValue();
-                for(int i = 0; i < intervals.size(); i++) {
-                    Timestamp start = intervals.get(i).getStartTime();
-                    Timestamp end = intervals.get(i).getEndTime();
-                    /**
-                     * If end == null , the thread has started but doesn't have an end time, so ignore these intervals
-                     * for calculating the Avg and timestamp of their lifetimes.
-                     */
-
-                    if(end != null) {
-                        //Calculate the Average and Standard deviation
-                        count++;
-                        double seconds = ((end.getTime() - start.getTime())/1000);
-                        lifetimeSeconds += seconds;
-                        lifeTimes.add(seconds);
-                    }
+        HashMap<Long, HashSet<Integer>> activeThreads;
+        //The cache is read and filled under the read lock, so no interval is ingested in between
+        lock.readLock().lock();
+        try {
+            activeThreads = cache.get(startTime, endTime);
+            if(activeThreads == null) {
+                //Group the active intervals by thread, the set holds the processes the thread is active on.
+                HashMap<Long, HashSet<Integer>> threads = new HashMap<>();
+                IntervalIndex.Visitor visitor = (threadId, processId, start, end) ->
+                        addActiveThread(threads, threadId, processId);
+                if(partitions != null) {
+                    //Only the partitions overlapping the time range are read
+                    partitions.query(startTime, endTime, visitor);
+                }
+                else {
+                    index.query(startTime, endTime, visitor);
+                }
+                cache.put(startTime, endTime, threads);
+                activeThreads = threads;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
 
-                    if(checkTimeRange(start,end,startTime,endTime)) {
-                        activeProcesses.add(processId);
-                    }
+        int numberOfActiveThreads = writeActiveThreads(activeThreads, startTime, endTime, path, writer);
+        PipelineMetrics.queryAnswered(System.nanoTime() - begin);
+        return numberOfActiveThreads;
+    }
+
+    /**
+     * This method writes the active threads of a time range, one thread per line with the processes it is active on,
+     * followed by the number of active threads.
+     * @param activeThreads processes of every active thread
+     * @param startTime start of the range
+     * @param endTime end of the range
+     * @param path reference to the folder of the user-request/thread files, or of the SegmentStore
+     * @param writer Writer the active threads are written to
+     * @return number of active threads in the time range
+     * @throws IOException
+     */
+    private static int writeActiveThreads(HashMap<Long, HashSet<Integer>> activeThreads, long startTime,
+                                          long endTime, String path, Writer writer) throws IOException {
+        int numberOfActiveThreads = 0;
+        for(Map.Entry<Long, HashSet<Integer>> thread : activeThreads.entrySet()) {
+            long threadId = thread.getKey();
+            numberOfActiveThreads++;
+            writer.append(threadId + ":" + thread.getValue() + " - "
+                    + getLogReference(threadId, path, startTime, endTime));
+            writer.append("\n");
+        }
+        //Store the total threads active in the time range at the end of this file
+        String activeThreadsText = "Number of Active threads in the time range ";
+        writer.append(activeThreadsText + LogParser.formatTimestamp(startTime) +" - "
+                + LogParser.formatTimestamp(endTime) +" : " + numberOfActiveThreads);
+        return numberOfActiveThreads;
+    }
 
+    /**
+     * This method is used to provide the Active threads of many time ranges at once. The ranges are answered by a
+     * single sweep over the intervals of the index, instead of a query per range. The active threads of every range
+     * are written in the same format as getActiveThreads, in the order of the ranges and separated by an empty line.
+     * @param ranges start and end timestamp of every range
+     * @param path reference to the folder of the user-request/thread files, or of the SegmentStore
+     * @param writer Writer the active threads are written to
+     * @return number of active threads of every range
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static int[] getActiveThreadsBatch(List<String[]> ranges, String path, Writer writer)
+            throws ParseException, IOException {
+        int q = ranges.size();
+        long[] startTimes = new long[q];
+        long[] endTimes = new long[q];
+        List<HashMap<Long, HashSet<Integer>>> activeThreads = new ArrayList<>(q);
+        for(int i = 0; i < q; i++) {
+            startTimes[i] = LogParser.parseTimestamp(ranges.get(i)[0]);
+            endTimes[i] = LogParser.parseTimestamp(ranges.get(i)[1]);
+            if(startTimes[i] > endTimes[i]) {
+                long t = startTimes[i];
+                startTimes[i] = endTimes[i];
+                endTimes[i] = t;
+            }
+            activeThreads.add(new HashMap<>());
+        }
+        lock.readLock().lock();
+        try {
+            if(partitions != null) {
+                //The partitions are read by every range overlapping them, the indexes stay cached in between
+                for(int i = 0; i < q; i++) {
+                    HashMap<Long, HashSet<Integer>> threads = activeThreads.get(i);
+                    partitions.query(startTimes[i], endTimes[i],
+                            (threadId, processId, start, end) -> addActiveThread(threads, threadId, processId));
                 }
+            }
+            else {
+                index.queryBatch(startTimes, endTimes, (range, threadId, processId, start, end) ->
+                        addActiveThread(activeThreads.get(range), threadId, processId));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[] counts = new int[q];
+        for(int i = 0; i < q; i++) {
+            if(i > 0) {
+                writer.append("\n\n");
+            }
+            counts[i] = writeActiveThreads(activeThreads.get(i), startTimes[i], endTimes[i], path, writer);
+        }
+        return counts;
+    }
+
+    /**
+     * This method returns the peak and the average concurrent threads of the seconds from t1 to t2, from the
+     * precomputed timeline in constant time. The range is widened to the whole seconds of t1 and t2, as the timeline
+     * has a granularity of one second.
+     * @param t1 start timestamp provided by the user
+     * @param t2 end timestamp provided by the user
+     * @param processId process of the threads, ConcurrencyTimeline.ALL_PROCESSES for all the threads
+     * @return concurrency of the range, null if there is no timeline or the process has no threads
+     * @throws ParseException
+     */
+    public static ConcurrencyTimeline.Concurrency getConcurrency(String t1, String t2, int processId)
+            throws ParseException, IOException {
+        ConcurrencyTimeline timeline = getTimeline();
+        if(timeline == null) {
+            return null;
+        }
+        return timeline.query(LogParser.parseTimestamp(t1.trim()), LogParser.parseTimestamp(t2.trim()), processId);
+    }
+
+    /**
+     * This method writes the peak and the average concurrent threads of a time range, for all the threads and then
+     * for every process. The range is widened to the whole seconds of t1 and t2, as the timeline has a granularity
+     * of one second.
+     * @param t1 start timestamp provided by the user
+     * @param t2 end timestamp provided by the user
+     * @param writer Writer the concurrency is written to
+     * @return false if there is no up to date timeline
+     * @throws ParseException
+     * @throws IOException
+     */
+    public static boolean writeConcurrency(String t1, String t2, Writer writer) throws ParseException, IOException {
+        ConcurrencyTimeline timeline = getTimeline();
+        if(timeline == null) {
+            return false;
+        }
+        long startTime = LogParser.parseTimestamp(t1.trim());
+        long endTime = LogParser.parseTimestamp(t2.trim());
+        writer.append("Concurrent threads from " + t1.trim() + " to " + t2.trim() + " (whole seconds)\n");
+        writer.append("All processes : " + timeline.query(startTime, endTime, ConcurrencyTimeline.ALL_PROCESSES)
+                + "\n");
+        for(int processId : timeline.getProcessIds()) {
+            writer.append("Process " + processId + " : " + timeline.query(startTime, endTime, processId) + "\n");
+        }
+        writer.append("\n");
+        return true;
+    }
+
+    /**
+     * This method reads the timeline, if it is up to date with the sanitized folder.
+     * @param folderPath folder of the sanitized logs
+     * @throws IOException
+     */
+    private static synchronized void readTimeline(String folderPath) throws IOException {
+        File f = new File(timelinePath);
+        timelineFolder = folderPath;
+        timelineModified = f.lastModified();
+        timeline = ConcurrencyTimeline.read(f, IntervalSidecar.fingerprint(new File(folderPath)));
+    }
+
+    /**
+     * Getter for the timeline, which is read again once SanitizeFiles has written or deleted it since it was read
+     * @return the timeline, null if there is no up to date timeline
+     * @throws IOException
+     */
+    private static synchronized ConcurrencyTimeline getTimeline() throws IOException {
+        if(timelineFolder != null && new File(timelinePath).lastModified() != timelineModified) {
+            readTimeline(timelineFolder);
+        }
+        return timeline;
+    }
 
+    /**
+     * This method compares the memory of the loaded intervals with the memory they take as nested HashMaps.
+     * @return memory report of the interval store
+     */
+    public static String getMemoryReport() {
+        lock.readLock().lock();
+        try {
+            return store.getMemoryReport();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Getter for the counters of the query cache
+     * @return hits, misses, evictions and invalidations of the cache
+     */
+    public static String getCacheStats() {
+        return cache.getStats();
+    }
+
+    private static void addActiveThread(HashMap<Long, HashSet<Integer>> activeThreads, long threadId, int processId) {
+        HashSet<Integer> activeProcesses = activeThreads.get(threadId);
+        if(activeProcesses == null) {
+            activeProcesses = new HashSet<>();
+            activeThreads.put(threadId, activeProcesses);
+        }
+        activeProcesses.add(processId);
+    }
+
+    /**
+     * This method returns the handle to the logs of a thread/user-request in the SegmentStore.
+     * @param threadId thread/user-request id
+     * @param path folder of the SegmentStore
+     * @return handle of the logs, null if the store has no logs of the thread
+     * @throws IOException
+     */
+    public static LogHandle getLogHandle(long threadId, String path) throws IOException {
+        return SegmentStore.open(path).getHandle(threadId);
+    }
+
+    /**
+     * Layout of a folder of sanitized logs : plain files, compressed files or a SegmentStore. It is decided once for
+     * the folder, so the reference of a thread doesn't look at the disk.
+     */
+    private static final class LogLayout {
+        private final String path;
+        private final boolean compressed;
+        private final SegmentStore segments;
+
+        LogLayout(String path) throws IOException {
+            this.path = path;
+            this.compressed = hasCompressedFiles(path);
+            this.segments = !compressed && SegmentStore.exists(path) ? SegmentStore.open(path) : null;
+        }
+
+        private static boolean hasCompressedFiles(String path) throws IOException {
+            File folder = new File(path);
+            if(!folder.isDirectory()) {
+                return false;
             }
-            //If set is not empty, that thread is active in this time range for a set of processes.
-            if(!activeProcesses.isEmpty()) {
-                numberOfActiveThreads++;
-                writer.append(threadId + ":" + activeProcesses + " - " + path+"/"+threadId+".log");
-                writer.append("\n");
+            try(DirectoryStream<Path> files = Files.newDirectoryStream(folder.toPath(),
+                    "*" + CompressedLogWriter.BLOCK_FILE)) {
+                return files.iterator().hasNext();
             }
         }
-        //Store the total threads active in the time range at the end of this file
-        String activeThreadsText = "Number of Active threads in the time range ";
-        writer.append(activeThreadsText + startTime +" - "+ endTime +" : " + numberOfActiveThreads);
-        writer.close();
+    }
+
+    /**
+     * The logs of a thread are referred to by their handle in a SegmentStore, by the paths of its files in the time
+     * partitions overlapping the range, or else by the path of its file. The layout of the folder is the one decided
+     * when the intervals were loaded, a folder which wasn't loaded (e.g. by SearchAPI) is looked at once.
+     */
+    static String getLogReference(long threadId, String path, long startTime, long endTime) throws IOException {
+        if(partitions != null) {
+            return String.join(", ", partitions.getLogFiles(threadId, startTime, endTime));
+        }
+        LogLayout logs = layout;
+        if(logs == null || !logs.path.equals(path)) {
+            logs = new LogLayout(path);
+            layout = logs;
+        }
+        if(logs.compressed) {
+            return path + "/" + threadId + CompressedLogWriter.BLOCK_FILE;
+        }
+        if(logs.segments != null) {
+            LogHandle handle = logs.segments.getHandle(threadId);
+            if(handle != null) {
+                return handle.toString();
+            }
+        }
+        return path + "/" + threadId + ".log";
     }
 
     /**
      * This method is used to check if the interval start time lies between start and end time or if the interval start
      * time lies before the start time and the interval end time lies after the start time.
-     * These conditions guarantee that this thread with interval is active.
+     * These conditions guarantee that this thread with interval is active. An interval without an end time has the
+     * end time Interval.OPEN, which is after every start time provided by the user.
      * @param start interval start time
-     * @param end  interval end time
+     * @param end interval end time
      * @param startTime start time provided by the user
      * @param endTime end time provided by the user
-     * @return tru or false based on the condition
+     * @return true or false based on the condition
      */
-    public static boolean checkTimeRange(Timestamp start, Timestamp end, Timestamp startTime, Timestamp endTime) {
+    public static boolean checkTimeRange(long start, long end, long startTime, long endTime) {
+        return (start > startTime && start < endTime) || (start < startTime && end > startTime);
+    }
 
-        if((start.after(startTime) && start.before(endTime))
-                || (start.before(startTime) && (end == null || end.after(startTime)))) {
-            return true;
+    /**
+     * This method merges the statistics of all the processes into the statistics of all the threads.
+     * @return lifetime statistics of all the threads
+     */
+    private static LifetimeStats getLifetimeStats() {
+        LifetimeStats all = new LifetimeStats();
+        for(LifetimeStats stats : processStats.values()) {
+            all.merge(stats);
         }
-        return false;
+        return all;
     }
 
     /**
@@ -228,7 +726,7 @@ public class BasicAPI {
      * @throws IOException
      */
     private static void getAverageLifeTime(BufferedWriter writer) throws IOException {
-        averageLifetime = lifetimeSeconds/count;
+        double averageLifetime = getLifetimeStats().getMean();
         writer.append("Average of all the threads lifetime for the whole log dump : " + averageLifetime + " s\n");
     }
 
@@ -238,12 +736,34 @@ public class BasicAPI {
      * @throws IOException
      */
     private static void getStandardDeviation(BufferedWriter writer) throws IOException {
-        double sqMeanDistance = 0;
-        for(double lifetime : lifeTimes) {
-            sqMeanDistance += Math.pow(lifetime-averageLifetime,2);
-        }
-        stdDev = Math.sqrt(sqMeanDistance/count);
+        double stdDev = getLifetimeStats().getStandardDeviation();
         writer.append("Standard Deviation of all the threads lifetime for the whole log dump : " + stdDev + " s");
     }
 
+    /**
+     * This method writes the percentiles of the lifetime of all the threads, followed by the statistics of every
+     * process and of every thread name.
+     * @param writer BufferedWriter for writing the statistics to an output file
+     * @throws IOException
+     */
+    private static void getLifetimeBreakdown(BufferedWriter writer) throws IOException {
+        writer.append("\n\nPercentiles of all the threads lifetime\n");
+        writer.append(formatStats("all", getLifetimeStats()));
+        writer.append("\nLifetime per process id\n");
+        for(Integer pId : new TreeSet<>(processStats.keySet())) {
+            writer.append(formatStats(String.valueOf(pId), processStats.get(pId)));
+        }
+        writer.append("\nLifetime per thread name\n");
+        for(String threadName : new TreeSet<>(threadNameStats.keySet())) {
+            writer.append(formatStats(threadName, threadNameStats.get(threadName)));
+        }
+    }
+
+    static String formatStats(String name, LifetimeStats stats) {
+        return String.format(Locale.ROOT, "%s : count %d, average %.3f s, std dev %.3f s, p50 %.3f s, p95 %.3f s,"
+                + " p99 %.3f s, max %.3f s\n", name, stats.getCount(), stats.getMean(),
+                stats.getStandardDeviation(), stats.getQuantile(0.5), stats.getQuantile(0.95),
+                stats.getQuantile(0.99), stats.getMax());
+    }
+
 }
@@ -0,0 +1,94 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ByteBatch class is a growable array of bytes, used to batch the bytes of the logs before they are written.
+ */
+public class ByteBatch {
+
+    private byte[] bytes;
+    private int length = 0;
+
+    public ByteBatch() {
+        this(256);
+    }
+
+    public ByteBatch(int capacity) {
+        bytes = new byte[Math.max(16, capacity)];
+    }
+
+    public void append(byte b) {
+        ensureCapacity(length + 1);
+        bytes[length++] = b;
+    }
+
+    public void append(byte[] b, int off, int len) {
+        ensureCapacity(length + len);
+        System.arraycopy(b, off, bytes, length, len);
+        length += len;
+    }
+
+    /**
+     * Appends the bytes buffer[from, to) without changing the position of the buffer
+     */
+    public void append(ByteBuffer buffer, int from, int to) {
+        int len = to - from;
+        if(len <= 0) {
+            return;
+        }
+        ensureCapacity(length + len);
+        ByteBuffer source = buffer.duplicate();
+        source.position(from);
+        source.get(bytes, length, len);
+        length += len;
+    }
+
+    /**
+     * Appends the chars of the text as single bytes, the text must only contain ASCII chars.
+     */
+    public void appendAscii(CharSequence s) {
+        ensureCapacity(length + s.length());
+        for(int i = 0; i < s.length(); i++) {
+            bytes[length++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Getter for the array holding the bytes, only the first length() bytes are valid
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public void reset() {
+        length = 0;
+    }
+
+    /**
+     * Replaces the array of an empty batch which has grown larger than the capacity, so a batch which once held a
+     * large log doesn't keep its memory
+     */
+    public void shrink(int capacity) {
+        if(length == 0 && bytes.length > Math.max(16, capacity)) {
+            bytes = new byte[Math.max(16, capacity)];
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
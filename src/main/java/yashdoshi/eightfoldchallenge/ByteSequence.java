@@ -0,0 +1,65 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ByteSequence class is a CharSequence view over a range of bytes of a ByteBuffer, every byte is a single char. It lets
+ * the LogParser read the ASCII fields of a log directly from a mapped file, without decoding the line into a String.
+ * The bytes are read with absolute gets, so the position of the buffer is never changed.
+ */
+public class ByteSequence implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    /**
+     * Points the view to the bytes buffer[from, to)
+     * @param buffer buffer holding the bytes
+     * @param from offset of the first byte
+     * @param to offset after the last byte
+     * @return this view
+     */
+    public ByteSequence wrap(ByteBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        this.offset = from;
+        this.length = to - from;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteSequence().wrap(buffer, offset + start, offset + end);
+    }
+
+    /**
+     * Decodes the bytes as UTF-8, only used when the text itself is needed.
+     */
+    @Override
+    public String toString() {
+        return decode(buffer, offset, offset + length);
+    }
+
+    /**
+     * Decodes the bytes buffer[from, to) as UTF-8
+     * @return the decoded text
+     */
+    public static String decode(ByteBuffer buffer, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        ByteBuffer source = buffer.duplicate();
+        source.position(from);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,147 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.text.ParseException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * CompressedLogReader class reads the logs of a thread/user-request written by the CompressedLogWriter. The block
+ * index is searched for the last block beginning at or before the requested timestamp, and only that block and the
+ * blocks after it are inflated. The logs of a thread are written in the order of their timestamps, so no log at or
+ * after the timestamp is in an earlier block.
+ * Usage : CompressedLogReader <folder> <threadId> [fromTimestamp]
+ */
+public class CompressedLogReader {
+
+    /**
+     * The main method prints the logs of a thread, from the block holding the timestamp if one is given.
+     * @param args folder of the compressed files, thread id and an optional timestamp
+     * @throws IOException In case there is an issue while reading the compressed files.
+     * @throws ParseException Parsing the timestamp could create an issue.
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        if(args.length < 2) {
+            System.out.println("Usage : CompressedLogReader <folder> <threadId> [fromTimestamp]");
+            return;
+        }
+        long from = args.length > 2 ? LogParser.parseTimestamp(args[2]) : Long.MIN_VALUE;
+        OutputStream out = new BufferedOutputStream(System.out);
+        read(args[0], Long.parseLong(args[1]), from, out);
+        out.write('\n');
+        out.flush();
+    }
+
+    /**
+     * Checks if the folder holds the compressed logs of a thread
+     * @param folderPath folder of the compressed files
+     * @param threadId thread/user-request id
+     * @return true if the blocks of the thread exist
+     */
+    public static boolean exists(String folderPath, long threadId) {
+        return new File(folderPath, threadId + CompressedLogWriter.BLOCK_FILE).isFile();
+    }
+
+    /**
+     * This method reads the block index of a thread
+     * @param index block index file
+     * @return pairs of the first timestamp and the offset of every block
+     * @throws IOException
+     */
+    public static long[] readBlockIndex(File index) throws IOException {
+        //A record which is partially written is ignored
+        int records = (int) (index.length() / CompressedLogWriter.INDEX_RECORD);
+        long[] blocks = new long[2 * records];
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            for(int i = 0; i < 2 * records; i++) {
+                blocks[i] = in.readLong();
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * This method inflates the logs of a thread from the block holding the timestamp up to the last block. The logs
+     * before the timestamp in that block are written as well, a reader skips them with the LogParser. The line break
+     * in front of the first block is left out.
+     * @param folderPath folder of the compressed files
+     * @param threadId thread/user-request id
+     * @param fromTimestamp timestamp to seek to, Long.MIN_VALUE for all the logs
+     * @param out stream the logs are written to
+     * @return number of blocks inflated
+     * @throws IOException if a block is corrupted
+     */
+    public static int read(String folderPath, long threadId, long fromTimestamp, OutputStream out)
+            throws IOException {
+        long[] blocks = readBlockIndex(new File(folderPath, threadId + CompressedLogWriter.INDEX_FILE));
+        int count = blocks.length / 2;
+        if(count == 0) {
+            return 0;
+        }
+        //Binary search for the last block beginning at or before the timestamp
+        int low = 0;
+        int high = count - 1;
+        int first = 0;
+        while(low <= high) {
+            int mid = (low + high) >>> 1;
+            if(blocks[2 * mid] <= fromTimestamp) {
+                first = mid;
+                low = mid + 1;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+        Inflater inflater = new Inflater();
+        try(RandomAccessFile file = new RandomAccessFile(new File(folderPath,
+                threadId + CompressedLogWriter.BLOCK_FILE), "r")) {
+            file.seek(blocks[2 * first + 1]);
+            byte[] compressed = new byte[0];
+            byte[] raw = new byte[0];
+            for(int i = first; i < count; i++) {
+                int rawLength = file.readInt();
+                int length = file.readInt();
+                if(compressed.length < length) {
+                    compressed = new byte[length];
+                }
+                if(raw.length < rawLength) {
+                    raw = new byte[rawLength];
+                }
+                file.readFully(compressed, 0, length);
+                inflater.reset();
+                inflater.setInput(compressed, 0, length);
+                int inflated = 0;
+                while(inflated < rawLength && !inflater.finished()) {
+                    int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                    if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += n;
+                }
+                if(inflated != rawLength) {
+                    throw new IOException("Corrupted block " + i + " of thread " + threadId);
+                }
+                int skip = i == first && rawLength > 0 && raw[0] == '\n' ? 1 : 0;
+                out.write(raw, skip, rawLength - skip);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block of thread " + threadId, e);
+        } finally {
+            inflater.end();
+        }
+        return count - first;
+    }
+
+    /**
+     * This method inflates all the logs of a thread
+     * @param folderPath folder of the compressed files
+     * @param threadId thread/user-request id
+     * @return logs of the thread, the same bytes as its sanitized file
+     * @throws IOException if a block is corrupted
+     */
+    public static byte[] readAll(String folderPath, long threadId) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        read(folderPath, threadId, Long.MIN_VALUE, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,165 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * CompressedLogWriter class writes the sanitized logs of every thread/user-request as compressed blocks. The logs of a
+ * thread are batched the same way as the LogWriterPool, and every batch of about BLOCK_SIZE bytes is compressed with a
+ * Deflater into a single block of <threadId>.logz. A block holds whole logs, so every block can be inflated on its own.
+ * For every block a record is appended to the block index <threadId>.blk, with the timestamp of the first log of the
+ * block, so a reader can seek into the history of a thread and inflate only the blocks it needs.
+ * Inflating all the blocks of a thread one after the other gives the same bytes as its sanitized file.
+ * Layout of a block : rawLength (int), compressedLength (int), deflated bytes
+ * Layout of a record of the block index : firstTimestamp (long), offset of the block (long)
+ */
+public class CompressedLogWriter extends LogWriterPool {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+    public static final String BLOCK_FILE = ".logz";
+    public static final String INDEX_FILE = ".blk";
+    public static final int BLOCK_HEADER = 8;
+    public static final int INDEX_RECORD = 16;
+
+    /**
+     * Bytes before and after the compression and the time taken by it, over all the writers
+     */
+    private static final AtomicLong rawBytes = new AtomicLong();
+    private static final AtomicLong compressedBytes = new AtomicLong();
+    private static final AtomicLong compressNanos = new AtomicLong();
+
+    private final String folderPath;
+    private final Deflater deflater;
+    /**
+     * Timestamp of the first log in the batch of every thread
+     */
+    private final HashMap<Long, Long> firstTimestamps = new HashMap<>();
+    private byte[] compressed = new byte[BLOCK_SIZE];
+
+    /**
+     * Creates a writer with blocks of 64K bytes, 16M bytes buffered in total and the default compression level. The
+     * batches are flushed every 30 seconds instead of every second, so the blocks are not cut short.
+     * @param folderPath folder where the compressed thread/user-request files are written
+     */
+    public CompressedLogWriter(String folderPath) {
+        this(folderPath, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param folderPath folder where the compressed thread/user-request files are written
+     * @param level compression level of the Deflater, from 1 (fastest) to 9 (smallest)
+     */
+    public CompressedLogWriter(String folderPath, int level) {
+        super(folderPath, 1, BLOCK_SIZE, 16 * 1024 * 1024, 30000);
+        this.folderPath = folderPath;
+        this.deflater = new Deflater(level);
+    }
+
+    /**
+     * Keeps the timestamp of the first log of a block before the log is batched
+     * @param log the log to be written
+     * @throws IOException
+     */
+    @Override
+    public void write(LogLine log) throws IOException {
+        if(!firstTimestamps.containsKey(log.getThreadId())) {
+            firstTimestamps.put(log.getThreadId(), log.getTimestamp());
+        }
+        super.write(log);
+    }
+
+    /**
+     * Releases the Deflater once all the batches are written
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        deflater.end();
+    }
+
+    @Override
+    protected boolean hasLogs(long threadId) {
+        return getFile(threadId, BLOCK_FILE).length() != 0;
+    }
+
+    /**
+     * Compresses the batch into a block and appends it to the file of the thread. The block is written before its
+     * record in the block index, a record never refers to a block which was not written.
+     * @param threadId thread/user-request the batch belongs to
+     * @param batch batched logs of the thread
+     * @throws IOException
+     */
+    @Override
+    protected void writeBatch(long threadId, ByteBatch batch) throws IOException {
+        Long firstTimestamp = firstTimestamps.remove(threadId);
+        long begin = System.nanoTime();
+        deflater.reset();
+        deflater.setInput(batch.array(), 0, batch.length());
+        deflater.finish();
+        int length = 0;
+        while(!deflater.finished()) {
+            if(length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        compressNanos.addAndGet(System.nanoTime() - begin);
+        rawBytes.addAndGet(batch.length());
+        compressedBytes.addAndGet(BLOCK_HEADER + length);
+
+        File blocks = getFile(threadId, BLOCK_FILE);
+        long offset = blocks.length();
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(blocks, true),
+                BLOCK_HEADER + length))) {
+            out.writeInt(batch.length());
+            out.writeInt(length);
+            out.write(compressed, 0, length);
+        }
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(getFile(threadId, INDEX_FILE), true))) {
+            //A block written by write(threadId, String) has no timestamp, it is never skipped by a seek
+            out.writeLong(firstTimestamp == null ? Long.MIN_VALUE : firstTimestamp);
+            out.writeLong(offset);
+        }
+    }
+
+    @Override
+    protected void flushWriters() {
+        //Every block is written to its file as soon as it is compressed
+    }
+
+    @Override
+    protected void closeWriters() {
+        //Every block is written to its file as soon as it is compressed
+    }
+
+    private File getFile(long threadId, String extension) {
+        return new File(folderPath + "/" + threadId + extension);
+    }
+
+    /**
+     * This method resets the compression statistics, before the Log files are sanitized.
+     */
+    public static void resetStats() {
+        rawBytes.set(0);
+        compressedBytes.set(0);
+        compressNanos.set(0);
+    }
+
+    /**
+     * This method returns the compression ratio and the throughput of the compression since the last reset.
+     * @param elapsedNanos time taken by the whole sanitization
+     * @return summary of the compression
+     */
+    public static String getSummary(long elapsedNanos) {
+        double raw = rawBytes.get() / (1024.0 * 1024.0);
+        double packed = compressedBytes.get() / (1024.0 * 1024.0);
+        return String.format(Locale.ROOT, "Compressed %.1f MB of sanitized logs into %.1f MB, ratio %.2f,"
+                        + " deflate %.1f MB/s, sanitize %.1f MB/s", raw, packed, packed == 0 ? 0 : raw / packed,
+                raw / Math.max(1e-9, compressNanos.get() / 1e9), raw / Math.max(1e-9, elapsedNanos / 1e9));
+    }
+}
@@ -0,0 +1,439 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * ConcurrencyTimeline class keeps the concurrent threads of every second of the Log files, for all the threads and for
+ * the threads of every process, so the peak and the average concurrency of any time range can be answered without
+ * going over the logs again. A thread is live from its START until its END as defined by LivePairs, the same as in the
+ * ConcurrencyTracker and the intervals of BasicAPI.
+ * While the logs are merged, every second gets the highest count of live threads in it and the integral of the count
+ * over the second (count x millis), seconds without any START or END carry the count of the second before.
+ * Once the timeline is built or read, a range max over the peaks is answered by a sparse table in O(1) : the table
+ * keeps the busiest second of every range of 2^j seconds, and a range is covered by the two ranges of the largest
+ * power of 2 within it. The average is answered from the prefix sums of the integrals, also in O(1).
+ * The follow mode of SanitizeFiles extends the timeline with the logs of every poll and writes it again, so the file
+ * keeps the live pairs along with the series, and the fingerprint of the sanitized folder it was written for. A
+ * timeline which is stale, because logs were sanitized without it, is never read.
+ * Layout of the file :
+ * header - magic (int), version (int), fingerprint of the sanitized folder (long), first second (long), number of
+ * seconds (int), number of series (int)
+ * series - processId (int, ALL_PROCESSES for all the threads), the peak of every second (int), the integral of every
+ * second (long)
+ * live pairs - the pairs still live at the end of the timeline, as written by LivePairs
+ */
+public class ConcurrencyTimeline implements LogListener {
+
+    private static final int MAGIC = 0x45464354;
+    private static final int VERSION = 2;
+    private static final long NONE = Long.MIN_VALUE;
+    /**
+     * Process id of the series of all the threads
+     */
+    public static final int ALL_PROCESSES = Integer.MIN_VALUE;
+
+    /**
+     * Peak and average concurrent threads of a time range
+     */
+    public static class Concurrency {
+        private final int peak;
+        private final long peakSecond;
+        private final double average;
+
+        Concurrency(int peak, long peakSecond, double average) {
+            this.peak = peak;
+            this.peakSecond = peakSecond;
+            this.average = average;
+        }
+
+        /**
+         * Getter for the highest count of concurrent threads in the range
+         * @return peak count
+         */
+        public int getPeak() {
+            return peak;
+        }
+
+        /**
+         * Getter for the first second with the peak count
+         * @return second since the epoch, of the wall clock time of the logs
+         */
+        public long getPeakSecond() {
+            return peakSecond;
+        }
+
+        /**
+         * Getter for the average count of concurrent threads over the seconds of the range
+         * @return time weighted average count
+         */
+        public double getAverage() {
+            return average;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "peak %d at %s, average %.2f", peak,
+                    LogParser.formatTimestamp(peakSecond * 1000).substring(0, 19), average);
+        }
+    }
+
+    /**
+     * Counts of a single series, indexed by the second from the first second of the timeline
+     */
+    private static class Series {
+        private int[] peaks;
+        private long[] integrals;
+        /**
+         * Live threads and the time the integrals are added up to, only while the timeline is built
+         */
+        private int count = 0;
+        private long time = NONE;
+        private long[] prefixSums;
+        private volatile int[][] sparseTable;
+
+        Series(int capacity) {
+            peaks = new int[capacity];
+            integrals = new long[capacity];
+        }
+
+        /**
+         * Adds the count to every second from the time of the series up to the given time
+         */
+        void advance(long to, long firstSecond) {
+            if(time == NONE) {
+                time = to;
+            }
+            while(time < to) {
+                long second = Math.floorDiv(time, 1000);
+                long end = Math.min(to, (second + 1) * 1000);
+                int index = ensure(second - firstSecond);
+                integrals[index] += count * (end - time);
+                peaks[index] = Math.max(peaks[index], count);
+                time = end;
+            }
+            int index = ensure(Math.floorDiv(time, 1000) - firstSecond);
+            peaks[index] = Math.max(peaks[index], count);
+        }
+
+        private int ensure(long index) {
+            if(index >= peaks.length) {
+                int capacity = (int) Math.max(index + 1, peaks.length + (peaks.length >> 1));
+                peaks = Arrays.copyOf(peaks, capacity);
+                integrals = Arrays.copyOf(integrals, capacity);
+            }
+            return (int) index;
+        }
+
+        void trim(int seconds) {
+            peaks = Arrays.copyOf(peaks, seconds);
+            integrals = Arrays.copyOf(integrals, seconds);
+        }
+
+        /**
+         * Builds the prefix sums and the sparse table of the busiest seconds, on the first query of the series
+         */
+        synchronized void build() {
+            if(sparseTable != null) {
+                return;
+            }
+            int n = peaks.length;
+            prefixSums = new long[n + 1];
+            for(int i = 0; i < n; i++) {
+                prefixSums[i + 1] = prefixSums[i] + integrals[i];
+            }
+            int levels = 1;
+            while((1 << levels) <= n) {
+                levels++;
+            }
+            int[][] table = new int[levels][];
+            table[0] = new int[n];
+            for(int i = 0; i < n; i++) {
+                table[0][i] = i;
+            }
+            for(int j = 1; j < levels; j++) {
+                int half = 1 << (j - 1);
+                table[j] = new int[n - (1 << j) + 1];
+                for(int i = 0; i < table[j].length; i++) {
+                    table[j][i] = busiest(table[j - 1][i], table[j - 1][i + half]);
+                }
+            }
+            sparseTable = table;
+        }
+
+        /**
+         * Busiest of two seconds, the earlier one on a tie
+         */
+        private int busiest(int a, int b) {
+            return peaks[b] > peaks[a] || (peaks[b] == peaks[a] && b < a) ? b : a;
+        }
+
+        /**
+         * Busiest second of the seconds [from, to], with the two ranges of 2^j seconds covering it
+         */
+        int rangeMax(int from, int to) {
+            int j = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+            return busiest(sparseTable[j][from], sparseTable[j][to - (1 << j) + 1]);
+        }
+
+        long rangeSum(int from, int to) {
+            return prefixSums[to + 1] - prefixSums[from];
+        }
+
+        long getMemoryBytes() {
+            long bytes = 16 + 4L * peaks.length + 16 + 8L * integrals.length;
+            if(sparseTable != null) {
+                bytes += 16 + 8L * prefixSums.length;
+                for(int[] level : sparseTable) {
+                    bytes += 16 + 4L * level.length;
+                }
+            }
+            return bytes;
+        }
+    }
+
+    private long firstSecond = NONE;
+    private int seconds = 0;
+    private long lastTimestamp = NONE;
+    private final Series all = new Series(1024);
+    /**
+     * Series of every process, in the order of the process ids
+     */
+    private final TreeMap<Integer, Series> processes = new TreeMap<>();
+    private final LivePairs live = new LivePairs();
+    private boolean finished = false;
+
+    /**
+     * Updates the live threads for a START or END log, every log extends the timeline to its second.
+     * @param log log polled from the merge
+     */
+    @Override
+    public void onLog(LogLine log) {
+        if(finished) {
+            resume();
+        }
+        long timestamp = log.getTimestamp();
+        if(firstSecond == NONE) {
+            firstSecond = Math.floorDiv(timestamp, 1000);
+        }
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        boolean start = log.statementEquals("**START**");
+        if(!start && !log.statementEquals("**END**")) {
+            return;
+        }
+        Series process = processes.get(log.getProcessId());
+        if(process == null) {
+            process = new Series(16);
+            processes.put(log.getProcessId(), process);
+        }
+        //Logs of an earlier second than the sweep are counted at the time of the sweep
+        timestamp = Math.max(timestamp, firstSecond * 1000);
+        all.advance(Math.max(timestamp, all.time), firstSecond);
+        process.advance(Math.max(timestamp, process.time), firstSecond);
+        if(start) {
+            if(!live.start(log.getProcessId(), log.getThreadId())) {
+                return;
+            }
+            all.count++;
+            process.count++;
+        }
+        else if(live.end(log.getProcessId(), log.getThreadId())) {
+            all.count--;
+            process.count--;
+        }
+        else {
+            return;
+        }
+        all.advance(all.time, firstSecond);
+        process.advance(process.time, firstSecond);
+    }
+
+    /**
+     * This method closes the timeline at the end of the second of the last log. The threads which are still live
+     * are counted up to there, and the next log (of the next poll of the follow mode) continues from there.
+     */
+    public void finish() {
+        if(finished) {
+            return;
+        }
+        finished = true;
+        if(firstSecond == NONE) {
+            return;
+        }
+        long lastSecond = Math.floorDiv(lastTimestamp, 1000);
+        seconds = (int) (lastSecond - firstSecond + 1);
+        long end = (lastSecond + 1) * 1000;
+        for(Series series : allSeries()) {
+            if(series.time != NONE) {
+                series.advance(end, firstSecond);
+            }
+            series.trim(seconds);
+        }
+    }
+
+    /**
+     * Opens a finished timeline for more logs, the sparse tables are built again on the next query
+     */
+    private void resume() {
+        finished = false;
+        for(Series series : allSeries()) {
+            series.sparseTable = null;
+            series.prefixSums = null;
+        }
+    }
+
+    /**
+     * This method returns the peak and the average concurrent threads of the seconds from t1 to t2, both included.
+     * The timeline has a granularity of one second : the range is widened to the whole seconds of t1 and t2, so a
+     * range from 18:59:30,000 to 18:59:31,000 counts the peak and the average of both 18:59:30 and 18:59:31.
+     * Seconds outside of the timeline have no live thread.
+     * @param startTime start of the range in millis
+     * @param endTime end of the range in millis
+     * @param processId process of the threads, ALL_PROCESSES for all the threads
+     * @return concurrency of the range, null if the process has no threads
+     */
+    public Concurrency query(long startTime, long endTime, int processId) {
+        Series series = processId == ALL_PROCESSES ? all : processes.get(processId);
+        if(series == null) {
+            return null;
+        }
+        long fromSecond = Math.floorDiv(Math.min(startTime, endTime), 1000);
+        long toSecond = Math.floorDiv(Math.max(startTime, endTime), 1000);
+        if(seconds == 0 || toSecond < firstSecond || fromSecond >= firstSecond + seconds) {
+            return new Concurrency(0, fromSecond, 0.0);
+        }
+        long from = Math.max(fromSecond, firstSecond) - firstSecond;
+        long to = Math.min(toSecond, firstSecond + seconds - 1) - firstSecond;
+        series.build();
+        int busiest = series.rangeMax((int) from, (int) to);
+        double average = series.rangeSum((int) from, (int) to) / ((toSecond - fromSecond + 1) * 1000.0);
+        return new Concurrency(series.peaks[busiest], firstSecond + busiest, average);
+    }
+
+    /**
+     * Getter for the processes with a series of their own
+     * @return process ids in ascending order
+     */
+    public Set<Integer> getProcessIds() {
+        return processes.keySet();
+    }
+
+    /**
+     * Getter for the number of seconds in the timeline
+     * @return seconds from the first to the last log
+     */
+    public int getSeconds() {
+        return seconds;
+    }
+
+    /**
+     * This method returns the memory of the series, with the sparse tables built so far
+     * @return bytes of the arrays
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for(Series series : allSeries()) {
+            bytes += series.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    private List<Series> allSeries() {
+        List<Series> series = new ArrayList<>();
+        series.add(all);
+        series.addAll(processes.values());
+        return series;
+    }
+
+    /**
+     * This method writes the timeline next to the sanitized files. It is written to a temporary file first and moved
+     * in place.
+     * @param f file of the timeline
+     * @param fingerprint fingerprint of the sanitized folder, once the logs of the timeline are written to it
+     * @throws IOException
+     */
+    public void write(File f, long fingerprint) throws IOException {
+        finish();
+        File temp = new File(f.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeLong(firstSecond);
+            out.writeInt(seconds);
+            out.writeInt(processes.size() + 1);
+            writeSeries(out, ALL_PROCESSES, all);
+            for(Map.Entry<Integer, Series> process : processes.entrySet()) {
+                writeSeries(out, process.getKey(), process.getValue());
+            }
+            live.write(out);
+        }
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeSeries(DataOutputStream out, int processId, Series series) throws IOException {
+        out.writeInt(processId);
+        for(int i = 0; i < seconds; i++) {
+            out.writeInt(series.peaks[i]);
+        }
+        for(int i = 0; i < seconds; i++) {
+            out.writeLong(series.integrals[i]);
+        }
+    }
+
+    /**
+     * This method reads the timeline written by SanitizeFiles, it can be extended with more logs once it is read.
+     * @param f file of the timeline
+     * @param fingerprint fingerprint of the sanitized folder as it is now
+     * @return the timeline, or null if the file doesn't exist, is stale or was written by an earlier version
+     * @throws IOException if the file is not a timeline
+     */
+    public static ConcurrencyTimeline read(File f, long fingerprint) throws IOException {
+        if(!f.exists()) {
+            return null;
+        }
+        ConcurrencyTimeline timeline = new ConcurrencyTimeline();
+        timeline.finished = true;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException(f + " is not a concurrency timeline");
+            }
+            if(in.readInt() != VERSION || in.readLong() != fingerprint) {
+                return null;
+            }
+            timeline.firstSecond = in.readLong();
+            timeline.seconds = in.readInt();
+            int count = in.readInt();
+            for(int s = 0; s < count; s++) {
+                int processId = in.readInt();
+                Series series = processId == ALL_PROCESSES ? timeline.all : new Series(timeline.seconds);
+                series.trim(timeline.seconds);
+                for(int i = 0; i < timeline.seconds; i++) {
+                    series.peaks[i] = in.readInt();
+                }
+                for(int i = 0; i < timeline.seconds; i++) {
+                    series.integrals[i] = in.readLong();
+                }
+                if(processId != ALL_PROCESSES) {
+                    timeline.processes.put(processId, series);
+                }
+            }
+            timeline.live.read(in);
+        }
+        //The live threads are counted from the end of the last second, as finish left them
+        if(timeline.seconds > 0) {
+            long end = (timeline.firstSecond + timeline.seconds) * 1000;
+            timeline.lastTimestamp = end - 1;
+            timeline.all.time = end;
+            timeline.all.count = timeline.live.size();
+            for(Map.Entry<Integer, Series> process : timeline.processes.entrySet()) {
+                process.getValue().time = end;
+                process.getValue().count = timeline.live.size(process.getKey());
+            }
+        }
+        return timeline;
+    }
+}
@@ -0,0 +1,221 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ConcurrencyTracker class sweeps over the START and END logs in the order they are merged and keeps the running count
+ * of the live (processId, threadId) pairs. A thread is live from its START until its END, whether it logs in between
+ * or not, as defined by LivePairs.
+ * For every second with a START or END, the maximum of the running count in that second is written as a row of a CSV
+ * series. A run of seconds without any START or END has the count carried over from the second before, and is written
+ * as a single row for its first second, so a gap of hours between two logs costs one row. A second missing from the
+ * series has the count of the row before it. Along with the series, the busiest seconds and the highest count over
+ * all the logs are kept.
+ * The memory used does not grow with the number of logs: only the live pairs, the current second and the top seconds
+ * are kept, and the series is written to the file as the seconds are closed.
+ * The follow mode continues the sweep from the state in the checkpoint. A second which was already written may be
+ * written again when more logs of that second are picked up, the last row of a second is its maximum.
+ */
+public class ConcurrencyTracker implements LogListener {
+
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final File seriesFile;
+    private final int topK;
+    private final LivePairs live = new LivePairs();
+    /**
+     * Current second of the sweep and the maximum count in it
+     */
+    private long second = NONE;
+    private int secondMax = 0;
+    private boolean closed = false;
+    private int maxConcurrency = 0;
+    private long maxSecond = NONE;
+    /**
+     * Busiest seconds as {second, count}, the least busy one is at the head
+     */
+    private final PriorityQueue<long[]> top = new PriorityQueue<>((o1, o2) -> o1[1] != o2[1]
+            ? Long.compare(o1[1], o2[1]) : Long.compare(o2[0], o1[0]));
+    private boolean append;
+    private Writer series;
+
+    /**
+     * @param seriesFile CSV file of the per second series
+     * @param append true to append to the series, false to write it again
+     * @param topK number of busiest seconds which are kept
+     */
+    public ConcurrencyTracker(File seriesFile, boolean append, int topK) {
+        this.seriesFile = seriesFile;
+        this.append = append;
+        this.topK = topK;
+    }
+
+    /**
+     * Updates the running count for a START or END log. Every other log is ignored.
+     * @param log log polled from the merge
+     * @throws IOException In case the series cannot be written
+     */
+    @Override
+    public void onLog(LogLine log) throws IOException {
+        boolean start = log.statementEquals("**START**");
+        if(!start && !log.statementEquals("**END**")) {
+            return;
+        }
+        advance(Math.floorDiv(log.getTimestamp(), 1000));
+        if(start) {
+            live.start(log.getProcessId(), log.getThreadId());
+        }
+        else {
+            live.end(log.getProcessId(), log.getThreadId());
+        }
+        secondMax = Math.max(secondMax, live.size());
+    }
+
+    /**
+     * This method closes the current second and the series file. It is called once all the logs of a run or of a poll
+     * are merged.
+     * @throws IOException In case the series cannot be written
+     */
+    public void finish() throws IOException {
+        if(second != NONE && !closed) {
+            closeSecond(second, secondMax);
+            closed = true;
+        }
+        if(series != null) {
+            series.close();
+            series = null;
+        }
+    }
+
+    /**
+     * Moves the sweep to the given second. The seconds in between are closed with the running count, as no thread
+     * started or ended in them : the first one is written to the series, and only the first topK of them are ranked
+     * as all of them have the same count and the earlier second wins a tie. Logs of an earlier second, which the follow mode can pick up late, are counted in the
+     * current second.
+     */
+    private void advance(long s) throws IOException {
+        if(second == NONE) {
+            second = s;
+            secondMax = live.size();
+            return;
+        }
+        if(s == second && closed) {
+            //More logs of a second which was already written
+            closed = false;
+            top.removeIf(entry -> entry[0] == s);
+            return;
+        }
+        if(s <= second) {
+            return;
+        }
+        if(!closed) {
+            closeSecond(second, secondMax);
+        }
+        if(s > second + 1) {
+            writeRow(second + 1, live.size());
+            for(long gap = second + 1; live.size() > 0 && gap < s && gap <= second + topK; gap++) {
+                rankSecond(gap, live.size());
+            }
+        }
+        second = s;
+        secondMax = live.size();
+        closed = false;
+    }
+
+    private void closeSecond(long s, int count) throws IOException {
+        writeRow(s, count);
+        rankSecond(s, count);
+    }
+
+    private void writeRow(long s, int count) throws IOException {
+        if(series == null) {
+            boolean header = !append || !seriesFile.exists();
+            series = new BufferedWriter(new FileWriter(seriesFile, append));
+            if(header) {
+                series.write("second,maxConcurrentThreads\n");
+            }
+            append = true;
+        }
+        series.write(formatSecond(s));
+        series.write(',');
+        series.write(Integer.toString(count));
+        series.write('\n');
+    }
+
+    private void rankSecond(long s, int count) {
+        if(count > maxConcurrency || (count == maxConcurrency && count > 0 && s < maxSecond)) {
+            maxConcurrency = count;
+            maxSecond = s;
+        }
+        if(top.size() < topK) {
+            top.offer(new long[]{s, count});
+        }
+        else if(topK > 0 && top.comparator().compare(new long[]{s, count}, top.peek()) > 0) {
+            top.poll();
+            top.offer(new long[]{s, count});
+        }
+    }
+
+    private static String formatSecond(long s) {
+        return LogParser.formatTimestamp(s * 1000).substring(0, 19);
+    }
+
+    /**
+     * This method writes the highest count of concurrent threads and the busiest seconds.
+     * @param writer writer of the report
+     * @throws IOException
+     */
+    public void writeReport(Writer writer) throws IOException {
+        writer.append("Highest count of concurrent threads running in any second \n");
+        writer.append((maxSecond == NONE ? "null" : formatSecond(maxSecond)) + "  :  " + maxConcurrency);
+        List<long[]> busiest = new ArrayList<>(top);
+        busiest.sort(top.comparator().reversed());
+        writer.append("\n\nTop " + busiest.size() + " busiest seconds \n");
+        for(long[] entry : busiest) {
+            writer.append(formatSecond(entry[0]) + "  :  " + entry[1] + "\n");
+        }
+    }
+
+    /**
+     * This method stores the state of the sweep in the checkpoint, so the follow mode can continue it after a restart.
+     * It is called after finish.
+     * @param checkpoint properties of the checkpoint
+     */
+    public void saveState(Properties checkpoint) {
+        checkpoint.setProperty("concurrency.second", String.valueOf(second));
+        checkpoint.setProperty("concurrency.secondMax", String.valueOf(secondMax));
+        checkpoint.setProperty("concurrency.max", String.valueOf(maxConcurrency));
+        checkpoint.setProperty("concurrency.maxSecond", String.valueOf(maxSecond));
+        checkpoint.setProperty("concurrency.live", live.format(false));
+        checkpoint.setProperty("concurrency.stuck", live.format(true));
+        StringBuilder seconds = new StringBuilder();
+        for(long[] entry : top) {
+            seconds.append(seconds.length() > 0 ? "," : "").append(entry[0]).append(':').append(entry[1]);
+        }
+        checkpoint.setProperty("concurrency.top", seconds.toString());
+    }
+
+    /**
+     * This method restores the state of the sweep from the checkpoint.
+     * @param checkpoint properties of the checkpoint
+     */
+    public void loadState(Properties checkpoint) {
+        second = Long.parseLong(checkpoint.getProperty("concurrency.second", String.valueOf(NONE)));
+        secondMax = Integer.parseInt(checkpoint.getProperty("concurrency.secondMax", "0"));
+        closed = second != NONE;
+        maxConcurrency = Integer.parseInt(checkpoint.getProperty("concurrency.max", "0"));
+        maxSecond = Long.parseLong(checkpoint.getProperty("concurrency.maxSecond", String.valueOf(NONE)));
+        live.clear();
+        live.parse(checkpoint.getProperty("concurrency.live", ""), false);
+        live.parse(checkpoint.getProperty("concurrency.stuck", ""), true);
+        top.clear();
+        for(String entry : checkpoint.getProperty("concurrency.top", "").split(",")) {
+            if(!entry.isEmpty()) {
+                int split = entry.indexOf(':');
+                top.offer(new long[]{Long.parseLong(entry.substring(0, split)),
+                        Long.parseLong(entry.substring(split + 1))});
+            }
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * FullTextIndex class is an inverted index over the log statements, built while the Log files are merged. Every log
+ * is numbered in the order of the merge, and the log table keeps the threadId, processId and timestamp of every log
+ * number. The statements are split into lower case tokens of letters and digits, and every token has a posting list of
+ * the logs it appears in, with the positions of the token in the statement.
+ * The posting lists are delta encoded varints: the gap from the previous log number, the number of positions and the
+ * gaps in between the positions. The threadId, processId and timestamp are stored once per log in the table instead of
+ * once per token.
+ * The logs are merged in the order of their timestamps, so a time range is a range of log numbers, and the postings
+ * outside of it are skipped while they are decoded.
+ * Layout of the file : magic (int), version (int), logs (int), threads (int), threadIds (long each), then for every
+ * log the gap from the previous timestamp, the thread number and the processId (varints), terms (int), then for every
+ * term the term (UTF), the number of bytes of its postings (int) and the postings.
+ */
+public class FullTextIndex implements LogListener {
+
+    private static final int MAGIC = 0x45464654;
+    private static final int VERSION = 1;
+    /**
+     * Tokens longer than this are cut, so a long id or a stack trace doesn't bloat the dictionary
+     */
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    /**
+     * Visitor is called for every log matching a query
+     */
+    public interface Visitor {
+        void visit(long threadId, int processId, long timestamp);
+    }
+
+    /**
+     * Posting list of a single term
+     */
+    private static class Postings {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int lastLog;
+
+        private void add(int log, int[] positions, int count) {
+            writeVarint(log - lastLog);
+            lastLog = log;
+            writeVarint(count);
+            int previous = 0;
+            for(int i = 0; i < count; i++) {
+                writeVarint(positions[i] - previous);
+                previous = positions[i];
+            }
+        }
+
+        private void writeVarint(int value) {
+            if(length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+            while((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+
+    private final HashMap<String, Postings> terms = new HashMap<>();
+    private long[] timestamps = new long[1024];
+    private int[] threads = new int[1024];
+    private int[] processIds = new int[1024];
+    private int logs;
+    private final HashMap<Long, Integer> threadNumbers = new HashMap<>();
+    private long[] threadIds = new long[64];
+    private boolean sorted = true;
+
+    //Tokens of the log being added, reused for every log
+    private final List<String> tokens = new ArrayList<>();
+    private int[] positions = new int[16];
+
+    /**
+     * Adds every log polled from the merge to the index
+     * @param log log polled from the merge
+     */
+    @Override
+    public void onLog(LogLine log) {
+        add(log.getThreadId(), log.getProcessId(), log.getTimestamp(), log.getLogStatement());
+    }
+
+    /**
+     * This method adds a log to the log table and its tokens to the posting lists.
+     * @param threadId thread/user-request of the log
+     * @param processId process of the log
+     * @param timestamp timestamp of the log
+     * @param statement log statement
+     */
+    public void add(long threadId, int processId, long timestamp, String statement) {
+        if(logs == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, logs * 2);
+            threads = Arrays.copyOf(threads, logs * 2);
+            processIds = Arrays.copyOf(processIds, logs * 2);
+        }
+        if(logs > 0 && timestamp < timestamps[logs - 1]) {
+            sorted = false;
+        }
+        int log = logs++;
+        timestamps[log] = timestamp;
+        threads[log] = getThreadNumber(threadId);
+        processIds[log] = processId;
+
+        tokens.clear();
+        tokenize(statement, tokens);
+        for(int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if(token == null) {
+                continue;
+            }
+            //All the positions of the token in this log are in a single posting
+            int count = 0;
+            for(int j = i; j < tokens.size(); j++) {
+                if(token.equals(tokens.get(j))) {
+                    if(count == positions.length) {
+                        positions = Arrays.copyOf(positions, count * 2);
+                    }
+                    positions[count++] = j;
+                    if(j > i) {
+                        tokens.set(j, null);
+                    }
+                }
+            }
+            Postings postings = terms.get(token);
+            if(postings == null) {
+                postings = new Postings();
+                terms.put(token, postings);
+            }
+            postings.add(log, positions, count);
+        }
+    }
+
+    private int getThreadNumber(long threadId) {
+        Integer number = threadNumbers.get(threadId);
+        if(number == null) {
+            number = threadNumbers.size();
+            threadNumbers.put(threadId, number);
+            if(number == threadIds.length) {
+                threadIds = Arrays.copyOf(threadIds, number * 2);
+            }
+            threadIds[number] = threadId;
+        }
+        return number;
+    }
+
+    /**
+     * This method splits the text into lower case tokens of letters and digits. Every other character separates two
+     * tokens, so en.wikipedia.org is the phrase of the tokens en, wikipedia and org.
+     * @param text text to be split
+     * @param tokens list the tokens are added to
+     */
+    public static void tokenize(String text, List<String> tokens) {
+        int start = -1;
+        for(int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if(letter && start < 0) {
+                start = i;
+            }
+            else if(!letter && start >= 0) {
+                tokens.add(text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Getter for the number of logs
+     * @return number of logs in the log table
+     */
+    public int size() {
+        return logs;
+    }
+
+    /**
+     * Getter for the number of terms
+     * @return number of distinct tokens
+     */
+    public int getTermCount() {
+        return terms.size();
+    }
+
+    /**
+     * This method finds every log which contains all the phrases and lies in the time range. A phrase is a list of
+     * tokens which appear one after the other in the statement, a single term is a phrase of one token.
+     * @param phrases phrases which all have to be in the log
+     * @param startTime start of the time range, inclusive
+     * @param endTime end of the time range, inclusive
+     * @param visitor called for every matching log, in the order of the merge
+     * @return number of matching logs
+     */
+    public int query(List<List<String>> phrases, long startTime, long endTime, Visitor visitor) {
+        if(phrases.isEmpty()) {
+            return 0;
+        }
+        //The logs in the time range are a range of log numbers, unless the logs were added out of order
+        int from = sorted ? lowerBound(startTime) : 0;
+        int to = sorted ? lowerBound(endTime == Long.MAX_VALUE ? endTime : endTime + 1) : logs;
+        int[] matches = null;
+        int matchCount = 0;
+        for(List<String> phrase : phrases) {
+            int[][] found = matchPhrase(phrase, from, to);
+            int[] logNumbers = found[0];
+            int count = found[1][0];
+            if(matches == null) {
+                matches = logNumbers;
+                matchCount = count;
+            }
+            else {
+                matchCount = intersect(matches, matchCount, logNumbers, count);
+            }
+            if(matchCount == 0) {
+                return 0;
+            }
+        }
+        int visited = 0;
+        for(int i = 0; i < matchCount; i++) {
+            int log = matches[i];
+            if(timestamps[log] >= startTime && timestamps[log] <= endTime) {
+                visitor.visit(threadIds[threads[log]], processIds[log], timestamps[log]);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Returns the log numbers in [from, to) containing the phrase, and their count
+     */
+    private int[][] matchPhrase(List<String> phrase, int from, int to) {
+        //Every log of the first token is a candidate, which is kept if the next tokens follow at the next positions
+        PostingsReader[] readers = new PostingsReader[phrase.size()];
+        for(int i = 0; i < phrase.size(); i++) {
+            Postings postings = terms.get(phrase.get(i));
+            if(postings == null) {
+                return new int[][] {new int[0], {0}};
+            }
+            readers[i] = new PostingsReader(postings);
+        }
+        int[] result = new int[16];
+        int count = 0;
+        PostingsReader first = readers[0];
+        while(first.next(from) && first.log < to) {
+            boolean all = true;
+            for(int i = 1; i < readers.length && all; i++) {
+                all = readers[i].next(first.log) && readers[i].log == first.log;
+            }
+            if(all && hasPhrase(readers)) {
+                if(count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = first.log;
+            }
+            from = first.log + 1;
+        }
+        return new int[][] {result, {count}};
+    }
+
+    /**
+     * Checks if the tokens of the readers, which are all at the same log, follow each other at some position
+     */
+    private static boolean hasPhrase(PostingsReader[] readers) {
+        for(int p = 0; p < readers[0].count; p++) {
+            int position = readers[0].positions[p];
+            boolean all = true;
+            for(int i = 1; i < readers.length && all; i++) {
+                all = readers[i].hasPosition(position + i);
+            }
+            if(all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the log numbers of a which are in b, both are sorted
+     */
+    private static int intersect(int[] a, int aCount, int[] b, int bCount) {
+        int count = 0;
+        int j = 0;
+        for(int i = 0; i < aCount; i++) {
+            while(j < bCount && b[j] < a[i]) {
+                j++;
+            }
+            if(j < bCount && b[j] == a[i]) {
+                a[count++] = a[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * First log number with a timestamp at or after the timestamp
+     */
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = logs;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(timestamps[mid] < timestamp) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * PostingsReader decodes a posting list one log at a time
+     */
+    private static class PostingsReader {
+        private final byte[] bytes;
+        private final int length;
+        private int offset;
+        private int log;
+        private int count;
+        private int[] positions = new int[4];
+        private boolean started;
+
+        private PostingsReader(Postings postings) {
+            this.bytes = postings.bytes;
+            this.length = postings.length;
+        }
+
+        /**
+         * Moves to the first log at or after the log number
+         * @return false once the posting list is exhausted
+         */
+        private boolean next(int target) {
+            if(started && log >= target) {
+                return log != Integer.MAX_VALUE;
+            }
+            while(offset < length) {
+                log += readVarint();
+                started = true;
+                count = readVarint();
+                if(positions.length < count) {
+                    positions = new int[count];
+                }
+                int position = 0;
+                for(int i = 0; i < count; i++) {
+                    position += readVarint();
+                    positions[i] = position;
+                }
+                if(log >= target) {
+                    return true;
+                }
+            }
+            started = true;
+            log = Integer.MAX_VALUE;
+            return false;
+        }
+
+        private boolean hasPosition(int position) {
+            for(int i = 0; i < count; i++) {
+                if(positions[i] == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while(b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * This method writes the index into a file.
+     * @param f file of the index
+     * @throws IOException
+     */
+    public void write(File f) throws IOException {
+        File temp = new File(f.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp),
+                1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(logs);
+            out.writeInt(threadNumbers.size());
+            for(int i = 0; i < threadNumbers.size(); i++) {
+                out.writeLong(threadIds[i]);
+            }
+            long previous = 0;
+            for(int i = 0; i < logs; i++) {
+                writeVarLong(out, zigZag(timestamps[i] - previous));
+                previous = timestamps[i];
+                writeVarLong(out, threads[i]);
+                writeVarLong(out, processIds[i] & 0xFFFFFFFFL);
+            }
+            out.writeInt(terms.size());
+            for(Map.Entry<String, Postings> term : terms.entrySet()) {
+                out.writeUTF(term.getKey());
+                out.writeInt(term.getValue().length);
+                out.write(term.getValue().bytes, 0, term.getValue().length);
+            }
+        }
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This method reads an index written by write.
+     * @param f file of the index
+     * @return the index, null if the file doesn't exist
+     * @throws IOException if the file is not an index
+     */
+    public static FullTextIndex read(File f) throws IOException {
+        if(!f.exists()) {
+            return null;
+        }
+        FullTextIndex index = new FullTextIndex();
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 1 << 16))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(f + " is not a full text index");
+            }
+            int logs = in.readInt();
+            int threadCount = in.readInt();
+            index.threadIds = new long[Math.max(1, threadCount)];
+            for(int i = 0; i < threadCount; i++) {
+                index.threadIds[i] = in.readLong();
+                index.threadNumbers.put(index.threadIds[i], i);
+            }
+            index.timestamps = new long[Math.max(1, logs)];
+            index.threads = new int[Math.max(1, logs)];
+            index.processIds = new int[Math.max(1, logs)];
+            long previous = 0;
+            for(int i = 0; i < logs; i++) {
+                previous += unZigZag(readVarLong(in));
+                index.timestamps[i] = previous;
+                index.threads[i] = (int) readVarLong(in);
+                index.processIds[i] = (int) readVarLong(in);
+                if(i > 0 && previous < index.timestamps[i - 1]) {
+                    index.sorted = false;
+                }
+            }
+            index.logs = logs;
+            int termCount = in.readInt();
+            for(int i = 0; i < termCount; i++) {
+                String term = in.readUTF();
+                Postings postings = new Postings();
+                postings.length = in.readInt();
+                postings.bytes = new byte[postings.length];
+                in.readFully(postings.bytes);
+                index.terms.put(term, postings);
+            }
+        }
+        return index;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while(b < 0);
+        return value;
+    }
+}
@@ -1,41 +1,70 @@
 package yashdoshi.eightfoldchallenge;
 
-import java.sql.Timestamp;
-
 /**
- * Interval class maintains the start and end time of a thread each time it is spawned in any of the processes
+ * Interval class maintains the start and end time of a thread each time it is spawned in any of the processes.
+ * The times are in milliseconds as read by the LogParser.
  */
 public class Interval {
 
-    private Timestamp startTime;
-    private Timestamp endTime;
+    /**
+     * End time of an interval which has a start delimiter, but no end delimiter (yet). It is after every other time.
+     */
+    public static final long OPEN = Long.MAX_VALUE;
+
+    private long startTime;
+    private long endTime;
+    /**
+     * Name of the thread as logged with its start delimiter, null if it is not known
+     */
+    private String threadName;
 
-    Interval( Timestamp start, Timestamp end) {
+    Interval(long start, long end) {
         this.startTime = start;
         this.endTime = end;
     }
 
+    Interval(long start, long end, String threadName) {
+        this(start, end);
+        this.threadName = threadName;
+    }
+
     /**
      * Getter for Start time
      * @return start time of the thread
      */
-    public Timestamp getStartTime() {
+    public long getStartTime() {
         return startTime;
     }
 
     /**
      * Getter for End time
-     * @return end time of the thread
+     * @return end time of the thread, OPEN if the thread doesn't have an end time
      */
-    public Timestamp getEndTime() {
+    public long getEndTime() {
         return endTime;
     }
 
+    /**
+     * Getter for the thread name
+     * @return name of the thread, null if it is not known
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Checks if the end delimiter of the thread has been logged
+     * @return true if the interval has an end time
+     */
+    public boolean hasEndTime() {
+        return endTime != OPEN;
+    }
+
     /**
      * Setter for Start time of the Interval
      * @param startTime
      */
-    public void setStartTime(Timestamp startTime) {
+    public void setStartTime(long startTime) {
         this.startTime = startTime;
     }
 
@@ -43,7 +72,7 @@ public class Interval {
      * Setter for End time of the interval
      * @param endTime
      */
-    public void setEndTime(Timestamp endTime) {
+    public void setEndTime(long endTime) {
         this.endTime = endTime;
     }
 }
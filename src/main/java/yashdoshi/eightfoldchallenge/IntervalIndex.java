@@ -0,0 +1,306 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.util.*;
+
+/**
+ * IntervalIndex class is an augmented interval tree over all the intervals of the threads/user-requests. The intervals
+ * are sorted on their start time and stored in arrays, the middle element of every sub-range is the root of that
+ * sub-range and also keeps the maximum end time of the whole sub-range. A range query only descends into the
+ * sub-ranges which can contain an overlapping interval, so it takes O(log n + k) for k active intervals instead of
+ * iterating over every interval.
+ * An interval without an end time has the end time Interval.OPEN, so it is treated as if it never ends.
+ * The index holds the slots of the intervals in an IntervalStore, sorted on their start time.
+ * Intervals added after the index was built are kept in a pending list which is checked one by one, until the index is
+ * built again. The end time is read from the store, so an interval which gets its end time later is still found, the
+ * maximum end time of its sub-range is then only larger than needed.
+ */
+public class IntervalIndex {
+
+    private final IntervalStore store;
+    private final int[] slots;
+    private final long[] startTimes;
+    private final long[] maxEndTimes;
+    private int[] pending = new int[16];
+    private int pendingCount = 0;
+
+    /**
+     * Visitor is called for every interval which is active in the queried time range.
+     */
+    public interface Visitor {
+        void visit(long threadId, int processId, long start, long end);
+    }
+
+    /**
+     * BatchVisitor is called for every interval which is active in one of the queried time ranges.
+     */
+    public interface BatchVisitor {
+        void visit(int range, long threadId, int processId, long start, long end);
+    }
+
+    /**
+     * Builds the index from the HashMap<ThreadId,HashMap<ProcessID, List<Interval>>>, the intervals are copied into a
+     * store of their own.
+     * @param map intervals of every thread for every process
+     */
+    public IntervalIndex(Map<Long, HashMap<Integer, List<Interval>>> map) {
+        this(IntervalStore.fromMap(map));
+    }
+
+    /**
+     * Builds the index over all the intervals of the store.
+     * @param store intervals of every thread for every process
+     */
+    public IntervalIndex(IntervalStore store) {
+        this.store = store;
+        int n = store.size();
+        slots = new int[n];
+        startTimes = new long[n];
+        maxEndTimes = new long[n];
+        for(int i = 0; i < n; i++) {
+            slots[i] = i;
+            startTimes[i] = store.getStartTime(i);
+        }
+        sortByStart(new int[n], new long[n], 0, n);
+        buildMaxEnd(0, n);
+    }
+
+    /**
+     * Adds an interval of the store after the index was built, it is kept in the pending list.
+     * @param slot slot of the interval in the store
+     */
+    public void add(int slot) {
+        if(pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount++] = slot;
+    }
+
+    /**
+     * Number of intervals in the index
+     * @return size of the index
+     */
+    public int size() {
+        return startTimes.length + pendingCount;
+    }
+
+    /**
+     * Number of intervals added after the index was built
+     * @return size of the pending list
+     */
+    public int pendingSize() {
+        return pendingCount;
+    }
+
+    /**
+     * Visits every interval which is active in the time range (startTime, endTime) as per
+     * BasicAPI.checkTimeRange, in the order of their start time.
+     * @param startTime start of the range in epoch millis
+     * @param endTime end of the range in epoch millis
+     * @param visitor called for every active interval
+     */
+    public void query(long startTime, long endTime, Visitor visitor) {
+        query(0, startTimes.length, startTime, endTime, visitor);
+        for(int i = 0; i < pendingCount; i++) {
+            int slot = pending[i];
+            long start = store.getStartTime(slot);
+            long end = store.getEndTime(slot);
+            if(BasicAPI.checkTimeRange(start, end, startTime, endTime)) {
+                visitor.visit(store.getThreadId(slot), store.getProcessId(slot), start, end);
+            }
+        }
+    }
+
+    /**
+     * Visits every interval which is active in any of the time ranges, in a single sweep over the intervals instead
+     * of a query per range. The ranges are swept in the order of their start time. The intervals which start before
+     * the start of the range are added to a live set as the sweep passes them, and are removed in the order of their
+     * end time once they end, so the live set holds exactly the intervals which started before the range and end
+     * after its start. The intervals starting inside the range are a slice of the start times found by a binary
+     * search. It takes O((n + q) log n + k) for n intervals, q ranges and k active intervals.
+     * @param startTimes start of every range in epoch millis
+     * @param endTimes end of every range in epoch millis
+     * @param visitor called for every active interval of every range, with the position of the range in the arrays
+     */
+    public void queryBatch(long[] startTimes, long[] endTimes, BatchVisitor visitor) {
+        int n = this.startTimes.length;
+        Integer[] order = new Integer[startTimes.length];
+        for(int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (o1, o2) -> Long.compare(startTimes[o1], startTimes[o2]));
+
+        //Live set with the position of every interval in it, so an interval is removed in O(1)
+        int[] live = new int[n];
+        int[] livePosition = new int[n];
+        int liveCount = 0;
+        //Min heap of the live intervals on their end time
+        int[] heap = new int[n];
+        int heapSize = 0;
+        long[] ends = new long[n];
+        for(int i = 0; i < n; i++) {
+            ends[i] = store.getEndTime(slots[i]);
+        }
+        int next = 0;
+        for(int range : order) {
+            long startTime = startTimes[range];
+            long endTime = endTimes[range];
+            //Intervals starting before the range, which are still running at its start
+            while(next < n && this.startTimes[next] < startTime) {
+                if(ends[next] > startTime) {
+                    livePosition[next] = liveCount;
+                    live[liveCount++] = next;
+                    heapSize = push(heap, heapSize, next, ends);
+                }
+                next++;
+            }
+            while(heapSize > 0 && ends[heap[0]] <= startTime) {
+                int ended = heap[0];
+                heapSize = pop(heap, heapSize, ends);
+                int moved = live[--liveCount];
+                live[livePosition[ended]] = moved;
+                livePosition[moved] = livePosition[ended];
+            }
+            for(int i = 0; i < liveCount; i++) {
+                int k = live[i];
+                visitor.visit(range, store.getThreadId(slots[k]), store.getProcessId(slots[k]), this.startTimes[k],
+                        ends[k]);
+            }
+            //Intervals starting inside the range
+            for(int k = upperBound(startTime); k < n && this.startTimes[k] < endTime; k++) {
+                visitor.visit(range, store.getThreadId(slots[k]), store.getProcessId(slots[k]), this.startTimes[k],
+                        ends[k]);
+            }
+            for(int i = 0; i < pendingCount; i++) {
+                int slot = pending[i];
+                long start = store.getStartTime(slot);
+                long end = store.getEndTime(slot);
+                if(BasicAPI.checkTimeRange(start, end, startTime, endTime)) {
+                    visitor.visit(range, store.getThreadId(slot), store.getProcessId(slot), start, end);
+                }
+            }
+        }
+    }
+
+    /**
+     * First position with a start time after the timestamp
+     */
+    private int upperBound(long timestamp) {
+        int low = 0;
+        int high = startTimes.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(startTimes[mid] <= timestamp) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int push(int[] heap, int size, int item, long[] keys) {
+        int i = size;
+        while(i > 0) {
+            int parent = (i - 1) >>> 1;
+            if(keys[heap[parent]] <= keys[item]) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = item;
+        return size + 1;
+    }
+
+    private static int pop(int[] heap, int size, long[] keys) {
+        int last = heap[--size];
+        int i = 0;
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size) {
+                break;
+            }
+            if(child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                child++;
+            }
+            if(keys[heap[child]] >= keys[last]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        if(size > 0) {
+            heap[i] = last;
+        }
+        return size;
+    }
+
+    private void query(int lo, int hi, long startTime, long endTime, Visitor visitor) {
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            //No interval in this sub-range ends after the start of the range
+            if(maxEndTimes[mid] <= startTime) {
+                return;
+            }
+            query(lo, mid, startTime, endTime, visitor);
+            //Every interval on the right starts at or after the end of the range
+            if(startTimes[mid] >= endTime) {
+                return;
+            }
+            int slot = slots[mid];
+            long end = store.getEndTime(slot);
+            if(BasicAPI.checkTimeRange(startTimes[mid], end, startTime, endTime)) {
+                visitor.visit(store.getThreadId(slot), store.getProcessId(slot), startTimes[mid], end);
+            }
+            lo = mid + 1;
+        }
+    }
+
+    /**
+     * Stores the maximum end time of every sub-range in its middle element. The start time is also taken into
+     * account, so an interval which ends before it starts can still be found by its start time.
+     * @return maximum end time of the sub-range [lo, hi)
+     */
+    private long buildMaxEnd(int lo, int hi) {
+        if(lo >= hi) {
+            return Long.MIN_VALUE;
+        }
+        int mid = (lo + hi) >>> 1;
+        long max = Math.max(startTimes[mid], store.getEndTime(slots[mid]));
+        max = Math.max(max, buildMaxEnd(lo, mid));
+        max = Math.max(max, buildMaxEnd(mid + 1, hi));
+        maxEndTimes[mid] = max;
+        return max;
+    }
+
+    /**
+     * Sorts the slots and their start times in [lo, hi) on the start time with a merge sort, which keeps the slots
+     * with the same start time in the order of the store.
+     */
+    private void sortByStart(int[] slotBuffer, long[] timeBuffer, int lo, int hi) {
+        if(hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        sortByStart(slotBuffer, timeBuffer, lo, mid);
+        sortByStart(slotBuffer, timeBuffer, mid, hi);
+        if(startTimes[mid - 1] <= startTimes[mid]) {
+            return;
+        }
+        System.arraycopy(slots, lo, slotBuffer, lo, hi - lo);
+        System.arraycopy(startTimes, lo, timeBuffer, lo, hi - lo);
+        int left = lo;
+        int right = mid;
+        for(int i = lo; i < hi; i++) {
+            if(right >= hi || (left < mid && timeBuffer[left] <= timeBuffer[right])) {
+                slots[i] = slotBuffer[left];
+                startTimes[i] = timeBuffer[left++];
+            }
+            else {
+                slots[i] = slotBuffer[right];
+                startTimes[i] = timeBuffer[right++];
+            }
+        }
+    }
+}
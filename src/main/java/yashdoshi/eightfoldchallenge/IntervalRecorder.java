@@ -0,0 +1,67 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * IntervalRecorder class collects the intervals of every thread/user-request while the Log files are sanitized, the
+ * same way BasicAPI reads them from the sanitized files, and writes them into the IntervalSidecar once the sanitized
+ * files are written. The intervals are recorded straight into the columns of an IntervalStore, so the sanitization
+ * doesn't keep an object for every interval either.
+ */
+public class IntervalRecorder implements LogListener {
+
+    private final IntervalStore store;
+
+    /**
+     * Creates a recorder without any intervals
+     */
+    public IntervalRecorder() {
+        this(new IntervalStore());
+    }
+
+    /**
+     * Creates a recorder continuing from the intervals read from a sidecar
+     * @param store store of the intervals
+     */
+    public IntervalRecorder(IntervalStore store) {
+        this.store = store;
+    }
+
+    /**
+     * A new interval is added when the thread starts and the end time of its last interval is set when it ends, as
+     * defined by LivePairs. An end without a start, or after the last interval has already ended, is ignored.
+     * @param log log polled from the merge
+     */
+    @Override
+    public void onLog(LogLine log) {
+        if(log.statementEquals("**START**")) {
+            store.add(log.getThreadId(), log.getProcessId(), log.getTimestamp(), Interval.OPEN, log.getThreadName());
+        }
+        else if(log.statementEquals("**END**")) {
+            int slot = store.getLastSlot(log.getThreadId(), log.getProcessId());
+            if(slot != LongIntMap.MISSING && !store.hasEndTime(slot)) {
+                store.setEndTime(slot, log.getTimestamp());
+            }
+        }
+    }
+
+    /**
+     * Getter for the recorded intervals
+     * @return store of the intervals
+     */
+    public IntervalStore getIntervals() {
+        return store;
+    }
+
+    /**
+     * This method writes the intervals into the sidecar, with the fingerprint of the sanitized folder. It must be
+     * called after the sanitized files are written and closed.
+     * @param sidecar sidecar file
+     * @param sanitizedFolder folder of the sanitized files
+     * @throws IOException
+     */
+    public void write(File sidecar, File sanitizedFolder) throws IOException {
+        IntervalSidecar.write(sidecar, store, IntervalSidecar.fingerprint(sanitizedFolder));
+    }
+}
@@ -0,0 +1,187 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * IntervalSidecar class writes and reads the intervals of all the threads/user-requests as a compact binary file next
+ * to the sanitized files, so BasicAPI can load the intervals without parsing every sanitized log again.
+ * Layout of the file :
+ * header - magic (int), version (int), fingerprint of the sanitized folder (long), number of records (long),
+ * CRC32 of the records (long)
+ * records - threadId (long), processId (int), id of the thread name (int), startTime (long), endTime (long), in
+ * millis. An interval without an end time has Interval.OPEN as its end time, and -1 is the id of an unknown name.
+ * names - number of names (int), followed by every name as a modified UTF-8 string in the order of their ids
+ * The CRC32 is taken over the records and the names.
+ * The fingerprint is taken from the names and sizes of the sanitized files, in the folders of the time partitions as
+ * well, when the sidecar is written. A sidecar is stale once the sanitized files are changed without writing it
+ * again, and a stale sidecar is never read.
+ */
+public class IntervalSidecar {
+
+    private static final int MAGIC = 0x45464956;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = 32;
+    /**
+     * Bytes mapped at a time, a whole number of records
+     */
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    /**
+     * This method writes the intervals of the store into the sidecar, a record for every slot in the order of the
+     * slots. The records are streamed to a temporary file, the CRC32 is written into the header once they are all
+     * written, and the file is moved in place, so a reader never sees a partly written sidecar.
+     * @param f sidecar file
+     * @param store store of all the intervals
+     * @param fingerprint fingerprint of the sanitized folder the intervals were read from
+     * @throws IOException
+     */
+    public static void write(File f, IntervalStore store, long fingerprint) throws IOException {
+        Map<String, Integer> names = new LinkedHashMap<>();
+        File temp = new File(f.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try(DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp), 1 << 16), crc))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeLong(store.size());
+            //The CRC32 is written once the records and the names are written
+            out.writeLong(0);
+            crc.reset();
+            for(int slot = 0; slot < store.size(); slot++) {
+                String threadName = store.getThreadName(slot);
+                out.writeLong(store.getThreadId(slot));
+                out.writeInt(store.getProcessId(slot));
+                out.writeInt(threadName == null ? -1 : names.computeIfAbsent(threadName, name -> names.size()));
+                out.writeLong(store.getStartTime(slot));
+                out.writeLong(store.getEndTime(slot));
+            }
+            out.writeInt(names.size());
+            for(String name : names.keySet()) {
+                out.writeUTF(name);
+            }
+        }
+        try(RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+            file.seek(24);
+            file.writeLong(crc.getValue());
+        }
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * This method reads the intervals from the sidecar into the columns of an IntervalStore, without an object for
+     * every interval. A mapped buffer cannot be larger than 2 GB, so the file is mapped in windows of whole records.
+     * @param f sidecar file
+     * @param fingerprint fingerprint of the sanitized folder as it is now
+     * @return store of all the intervals in the order of the records, or null if the sidecar is missing, stale or
+     * corrupted
+     * @throws IOException
+     */
+    public static IntervalStore readStore(File f, long fingerprint) throws IOException {
+        if(!f.isFile() || f.length() < HEADER_SIZE) {
+            return null;
+        }
+        try(FileChannel channel = new RandomAccessFile(f, "r").getChannel()) {
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            long records = header.getLong(16);
+            if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getLong(8) != fingerprint
+                    || records < 0 || records > (size - HEADER_SIZE) / RECORD_SIZE) {
+                return null;
+            }
+            long namesOffset = HEADER_SIZE + records * RECORD_SIZE;
+            if(size < namesOffset + 4) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            for(long position = HEADER_SIZE; position < size; position += WINDOW_SIZE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE,
+                        size - position)));
+            }
+            if(crc.getValue() != header.getLong(24)) {
+                return null;
+            }
+
+            ByteBuffer namesBuffer = channel.map(FileChannel.MapMode.READ_ONLY, namesOffset, size - namesOffset);
+            String[] names = new String[namesBuffer.getInt()];
+            DataInputStream in = new DataInputStream(new ByteBufferInputStream(namesBuffer));
+            for(int i = 0; i < names.length; i++) {
+                names[i] = in.readUTF();
+            }
+
+            IntervalStore store = new IntervalStore((int) Math.min(records, Integer.MAX_VALUE - 8));
+            for(long window = HEADER_SIZE; window < namesOffset; window += WINDOW_SIZE) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, window, Math.min(WINDOW_SIZE,
+                        namesOffset - window));
+                for(int position = 0; position < buffer.limit(); position += RECORD_SIZE) {
+                    int nameId = buffer.getInt(position + 12);
+                    store.add(buffer.getLong(position), buffer.getInt(position + 8), buffer.getLong(position + 16),
+                            buffer.getLong(position + 24), nameId < 0 ? null : names[nameId]);
+                }
+            }
+            return store;
+        }
+    }
+
+    /**
+     * InputStream over the remaining bytes of a ByteBuffer
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if(!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+    }
+
+    /**
+     * This method returns the fingerprint of the sanitized folder from the names and sizes of its files. Sanitized
+     * files are only ever appended to, so any new log changes the fingerprint. The folders in it are taken with their
+     * own fingerprint instead of their size, e.g. the time partitions, which keep their sanitized files in folders of
+     * their own. Only the sanitized folder of a partition is taken, its sidecars and metadata are written after the
+     * sanitized files.
+     * @param folder sanitized folder
+     * @return fingerprint of the folder
+     */
+    public static long fingerprint(File folder) {
+        File[] listOfFiles = folder.listFiles();
+        if(listOfFiles == null) {
+            return 0;
+        }
+        //The files are listed in any order, so the hashes of the files are summed
+        long fingerprint = listOfFiles.length;
+        for(File file : listOfFiles) {
+            long size = file.length();
+            if(file.isDirectory()) {
+                File sanitizedFolder = new File(file, "sanitizedLogs");
+                size = fingerprint(sanitizedFolder.isDirectory() ? sanitizedFolder : file);
+            }
+            long h = (file.getName().hashCode() * 31L + size) * 0x9E3779B97F4A7C15L;
+            fingerprint += h ^ (h >>> 29);
+        }
+        return fingerprint;
+    }
+}
@@ -0,0 +1,324 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.util.*;
+
+/**
+ * IntervalStore class keeps the intervals of all the threads/user-requests in columns of primitive arrays, instead of
+ * a HashMap<ThreadId,HashMap<ProcessID, List<Interval>>> with an object for every interval, list, map entry and boxed
+ * id. The thread ids are interned into dense thread numbers, the process ids and the thread names into dense numbers
+ * as well, and every interval is a slot of the columns : thread number, process number, name number, start time and
+ * end time, along with a link to another slot of the same thread, 32 bytes in total.
+ * The slots are in the order the intervals are added, so the intervals of a thread on a process are in the order of
+ * their start time. The last slot of every thread is kept, and from there the last slots of the thread on each of its
+ * processes are chained, the most recent first. An older slot of a thread on a process is taken out of the chain when
+ * a new one is added, so the last interval of a thread on a process is found by walking over the processes of the
+ * thread only, however many intervals the thread has.
+ */
+public class IntervalStore {
+
+    private static final int NO_NAME = -1;
+
+    /**
+     * Dense numbers of the thread ids, the process ids and the names
+     */
+    private final LongIntMap threadNumbers = new LongIntMap();
+    private long[] threadIds = new long[16];
+    private int[] lastSlots = new int[16];
+    private int threadCount = 0;
+    private final LongIntMap processNumbers = new LongIntMap();
+    private int[] processIds = new int[16];
+    private int processCount = 0;
+    private final HashMap<String, Integer> nameNumbers = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] threads;
+    private int[] processes;
+    private int[] threadNames;
+    /**
+     * Last slot of the same thread on the process it ran on before, LongIntMap.MISSING at the end of the chain. Only
+     * the slots in the chain of their thread have a valid link.
+     */
+    private int[] previousSlots;
+    private long[] startTimes;
+    private long[] endTimes;
+    private int size = 0;
+
+    public IntervalStore() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize number of intervals the store holds without growing its columns
+     */
+    public IntervalStore(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        threads = new int[capacity];
+        processes = new int[capacity];
+        threadNames = new int[capacity];
+        previousSlots = new int[capacity];
+        startTimes = new long[capacity];
+        endTimes = new long[capacity];
+    }
+
+    /**
+     * This method copies the intervals of the map into a new store.
+     * @param map HashMap<ThreadId,HashMap<ProcessID, List<Interval>>> of the intervals
+     * @return store of the same intervals
+     */
+    public static IntervalStore fromMap(Map<Long, HashMap<Integer, List<Interval>>> map) {
+        int count = 0;
+        for(HashMap<Integer, List<Interval>> processes : map.values()) {
+            for(List<Interval> intervals : processes.values()) {
+                count += intervals.size();
+            }
+        }
+        IntervalStore store = new IntervalStore(count);
+        for(Map.Entry<Long, HashMap<Integer, List<Interval>>> thread : map.entrySet()) {
+            for(Map.Entry<Integer, List<Interval>> process : thread.getValue().entrySet()) {
+                for(Interval interval : process.getValue()) {
+                    store.add(thread.getKey(), process.getKey(), interval.getStartTime(), interval.getEndTime(),
+                            interval.getThreadName());
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Adds an interval of a thread on a process. It becomes the last interval of the thread on the process.
+     * @param threadId thread of the interval
+     * @param processId process of the interval
+     * @param startTime start time of the interval
+     * @param endTime end time of the interval, Interval.OPEN if it has not ended
+     * @param threadName name of the thread, null if it is not known
+     * @return slot of the interval
+     */
+    public int add(long threadId, int processId, long startTime, long endTime, String threadName) {
+        if(size == startTimes.length) {
+            grow();
+        }
+        int thread = internThread(threadId);
+        int process = internProcess(processId);
+        int slot = size++;
+        threads[slot] = thread;
+        processes[slot] = process;
+        threadNames[slot] = internName(threadName);
+        //The last slot of the thread on the process is replaced by the new slot at the head of the chain
+        int before = LongIntMap.MISSING;
+        int last = lastSlots[thread];
+        while(last != LongIntMap.MISSING && processes[last] != process) {
+            before = last;
+            last = previousSlots[last];
+        }
+        int rest = lastSlots[thread];
+        if(last != LongIntMap.MISSING) {
+            if(before == LongIntMap.MISSING) {
+                rest = previousSlots[last];
+            }
+            else {
+                previousSlots[before] = previousSlots[last];
+            }
+        }
+        previousSlots[slot] = rest;
+        startTimes[slot] = startTime;
+        endTimes[slot] = endTime;
+        lastSlots[thread] = slot;
+        return slot;
+    }
+
+    /**
+     * Returns the slot of the last interval of a thread on a process
+     * @param threadId thread/user-request id
+     * @param processId process id
+     * @return slot of the interval, LongIntMap.MISSING if the thread has no interval on the process
+     */
+    public int getLastSlot(long threadId, int processId) {
+        int thread = threadNumbers.get(threadId);
+        int process = processNumbers.get(processId);
+        if(thread == LongIntMap.MISSING || process == LongIntMap.MISSING) {
+            return LongIntMap.MISSING;
+        }
+        int slot = lastSlots[thread];
+        while(slot != LongIntMap.MISSING && processes[slot] != process) {
+            slot = previousSlots[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Shrinks the columns to the number of intervals, once all the intervals are loaded
+     */
+    public void trim() {
+        threads = Arrays.copyOf(threads, Math.max(16, size));
+        processes = Arrays.copyOf(processes, threads.length);
+        threadNames = Arrays.copyOf(threadNames, threads.length);
+        previousSlots = Arrays.copyOf(previousSlots, threads.length);
+        startTimes = Arrays.copyOf(startTimes, threads.length);
+        endTimes = Arrays.copyOf(endTimes, threads.length);
+        threadIds = Arrays.copyOf(threadIds, Math.max(16, threadCount));
+        lastSlots = Arrays.copyOf(lastSlots, threadIds.length);
+    }
+
+    /**
+     * Number of intervals in the store
+     * @return number of slots
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of threads/user-requests in the store
+     * @return number of distinct thread ids
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public long getThreadId(int slot) {
+        return threadIds[threads[slot]];
+    }
+
+    public int getProcessId(int slot) {
+        return processIds[processes[slot]];
+    }
+
+    public long getStartTime(int slot) {
+        return startTimes[slot];
+    }
+
+    public long getEndTime(int slot) {
+        return endTimes[slot];
+    }
+
+    /**
+     * Getter for the thread name of an interval
+     * @param slot slot of the interval
+     * @return name of the thread, null if it is not known
+     */
+    public String getThreadName(int slot) {
+        return threadNames[slot] == NO_NAME ? null : names.get(threadNames[slot]);
+    }
+
+    /**
+     * Checks if the end delimiter of the interval has been logged
+     * @param slot slot of the interval
+     * @return true if the interval has an end time
+     */
+    public boolean hasEndTime(int slot) {
+        return endTimes[slot] != Interval.OPEN;
+    }
+
+    /**
+     * Setter for End time of an interval
+     * @param slot slot of the interval
+     * @param endTime end time of the interval
+     */
+    public void setEndTime(int slot, long endTime) {
+        endTimes[slot] = endTime;
+    }
+
+    /**
+     * This method returns the memory taken by the columns and the interning tables of the store. The strings of the
+     * names are left out, the map holds the same strings.
+     * @return bytes taken by the store
+     */
+    public long getMemoryBytes() {
+        long bytes = 6 * 16 + (long) threads.length * (4 + 4 + 4 + 4 + 8 + 8);
+        bytes += 2 * 16 + (8L + 4) * threadIds.length + threadNumbers.getMemoryBytes();
+        bytes += 16 + 4L * processIds.length + processNumbers.getMemoryBytes();
+        //Entry, boxed number and table slot of every name
+        bytes += 64L * names.size();
+        return bytes;
+    }
+
+    /**
+     * This method estimates the memory the same intervals take in a HashMap<ThreadId,HashMap<ProcessID,
+     * List<Interval>>> on a 64 bit JVM with compressed references. Every thread has a map entry, a boxed id and an
+     * inner map with its table, every process of a thread has a map entry, a boxed id and a list with its array, and
+     * every interval is an object. Tables are taken at a load of 0.75 and lists at their default capacity, so it is
+     * an estimate on the low side.
+     * @return estimated bytes of the map
+     */
+    public long getMapMemoryBytes() {
+        long bytes = 48 + 16 + threadCount * 4L * 4 / 3;
+        bytes += threadCount * (32L + 16 + 48 + 16 + 16 * 4);
+        bytes += getProcessKeyCount() * (32L + 16 + 24 + 16 + 10 * 4);
+        bytes += size * 32L;
+        return bytes;
+    }
+
+    /**
+     * This method compares the memory of the store with the memory of the map of the same intervals.
+     * @return intervals, threads and processes with the memory of the store and of the map
+     */
+    public String getMemoryReport() {
+        long bytes = getMemoryBytes();
+        long mapBytes = getMapMemoryBytes();
+        return String.format(Locale.ROOT, "Interval store : %d intervals of %d threads on %d processes in %.1f MB"
+                        + " (%.1f bytes per interval), about %.1f MB as nested HashMaps, %.1fx smaller", size,
+                threadCount, processCount, bytes / (1024.0 * 1024.0), size == 0 ? 0.0 : (double) bytes / size,
+                mapBytes / (1024.0 * 1024.0), (double) mapBytes / Math.max(1, bytes));
+    }
+
+    /**
+     * Number of distinct threads and processes, every one of them is a list in the map
+     */
+    private long getProcessKeyCount() {
+        LongHashSet keys = new LongHashSet();
+        for(int slot = 0; slot < size; slot++) {
+            keys.add(((long) threads[slot] << 32) | processes[slot]);
+        }
+        return keys.size();
+    }
+
+    private int internThread(long threadId) {
+        int thread = threadNumbers.get(threadId);
+        if(thread == LongIntMap.MISSING) {
+            if(threadCount == threadIds.length) {
+                threadIds = Arrays.copyOf(threadIds, threadCount * 2);
+                lastSlots = Arrays.copyOf(lastSlots, threadCount * 2);
+            }
+            thread = threadCount++;
+            threadIds[thread] = threadId;
+            lastSlots[thread] = LongIntMap.MISSING;
+            threadNumbers.put(threadId, thread);
+        }
+        return thread;
+    }
+
+    private int internProcess(int processId) {
+        int process = processNumbers.get(processId);
+        if(process == LongIntMap.MISSING) {
+            if(processCount == processIds.length) {
+                processIds = Arrays.copyOf(processIds, processCount * 2);
+            }
+            process = processCount++;
+            processIds[process] = processId;
+            processNumbers.put(processId, process);
+        }
+        return process;
+    }
+
+    private int internName(String threadName) {
+        if(threadName == null) {
+            return NO_NAME;
+        }
+        Integer name = nameNumbers.get(threadName);
+        if(name == null) {
+            name = names.size();
+            names.add(threadName);
+            nameNumbers.put(threadName, name);
+        }
+        return name;
+    }
+
+    private void grow() {
+        int capacity = startTimes.length + (startTimes.length >> 1);
+        threads = Arrays.copyOf(threads, capacity);
+        processes = Arrays.copyOf(processes, capacity);
+        threadNames = Arrays.copyOf(threadNames, capacity);
+        previousSlots = Arrays.copyOf(previousSlots, capacity);
+        startTimes = Arrays.copyOf(startTimes, capacity);
+        endTimes = Arrays.copyOf(endTimes, capacity);
+    }
+}
@@ -0,0 +1,161 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * LifetimeStats class keeps the statistics of the lifetimes of the threads in a single pass and in constant memory.
+ * The mean and variance are updated with Welford's method, so no lifetime has to be kept for a second pass, and the
+ * percentiles are estimated by a QuantileSketch.
+ * Stats of shards are merged with the pairwise formula of Chan et al., which gives the same mean and variance as if
+ * all the lifetimes were added to a single instance.
+ */
+public class LifetimeStats {
+
+    private long count = 0;
+    private double mean = 0.0;
+    /**
+     * Sum of the squared distances from the mean
+     */
+    private double m2 = 0.0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private final QuantileSketch sketch;
+
+    public LifetimeStats() {
+        this(new QuantileSketch());
+    }
+
+    private LifetimeStats(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    /**
+     * Adds the lifetime of a thread
+     * @param seconds lifetime in seconds
+     */
+    public void add(double seconds) {
+        count++;
+        double delta = seconds - mean;
+        mean += delta / count;
+        m2 += delta * (seconds - mean);
+        min = count == 1 ? seconds : Math.min(min, seconds);
+        max = count == 1 ? seconds : Math.max(max, seconds);
+        sketch.add(seconds);
+    }
+
+    /**
+     * Adds the lifetimes of other stats to these stats
+     * @param other stats of another shard
+     */
+    public void merge(LifetimeStats other) {
+        if(other.count == 0) {
+            return;
+        }
+        if(count == 0) {
+            min = other.min;
+            max = other.max;
+        }
+        else {
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        m2 += other.m2 + delta * delta * count * other.count / total;
+        mean += delta * other.count / total;
+        count = total;
+        sketch.merge(other.sketch);
+    }
+
+    /**
+     * Getter for the number of lifetimes
+     * @return number of threads which ended
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Getter for the average lifetime
+     * @return average in seconds, 0 if there are no lifetimes
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Getter for the standard deviation of the lifetimes, over all the lifetimes (not a sample)
+     * @return standard deviation in seconds, 0 if there are no lifetimes
+     */
+    public double getStandardDeviation() {
+        return count == 0 ? 0.0 : Math.sqrt(m2 / count);
+    }
+
+    /**
+     * Getter for the longest lifetime
+     * @return longest lifetime in seconds, NaN if there are no lifetimes
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Getter for the shortest lifetime
+     * @return shortest lifetime in seconds, NaN if there are no lifetimes
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * This method returns the estimated lifetime at the quantile q, within 1% of the actual lifetime. The quantile is
+     * the lower one, the lifetime of rank floor(q * (count - 1)) in ascending order : with few lifetimes p95 and p99
+     * are the same as a lower rank and can be well below the max, e.g. for 11 lifetimes p95 is the 10th of them. The
+     * estimate is the middle of its bucket, so it is clamped to the exact min and max.
+     * @param q quantile in between 0 and 1
+     * @return lifetime in seconds, NaN if there are no lifetimes
+     */
+    public double getQuantile(double q) {
+        if(count == 0) {
+            return Double.NaN;
+        }
+        return Math.max(min, Math.min(max, sketch.quantile(q)));
+    }
+
+    /**
+     * This method writes the stats, so the stats of a shard can be sent to be merged elsewhere.
+     * @param out output the stats are written to
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        sketch.write(out);
+    }
+
+    /**
+     * This method reads stats written by write.
+     * @param in input the stats are read from
+     * @return the stats
+     * @throws IOException
+     */
+    public static LifetimeStats read(DataInput in) throws IOException {
+        long count = in.readLong();
+        double mean = in.readDouble();
+        double m2 = in.readDouble();
+        double min = in.readDouble();
+        double max = in.readDouble();
+        LifetimeStats stats = new LifetimeStats(QuantileSketch.read(in));
+        stats.count = count;
+        stats.mean = mean;
+        stats.m2 = m2;
+        stats.min = min;
+        stats.max = max;
+        return stats;
+    }
+}
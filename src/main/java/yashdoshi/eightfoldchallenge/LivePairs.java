@@ -0,0 +1,194 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * LivePairs class keeps the live (processId, threadId) pairs of a sweep over the START and END logs. It is the one
+ * place where the lifetime of a thread is defined, and the ConcurrencyTracker, the ConcurrencyTimeline and the
+ * intervals of BasicAPI (IntervalRecorder, IntervalStore) all follow it :
+ * Every START opens a new interval of the thread on its process, and an END closes the last interval of the thread on
+ * that process if it is open. An END without an open last interval (never started, or already ended) is ignored.
+ * A thread which starts again before it ends leaves its previous interval open, and as nothing can close it any more
+ * the thread stays live until the end of the logs. This is the same as the intervals BasicAPI has always read from the
+ * sanitized files, where such a thread is active in every later range.
+ * A pair is live while any of its intervals is open, so a pair is counted once however many intervals it left open.
+ * Only two sets are kept for every process : the pairs whose last interval is open, and the pairs which left an
+ * interval open for good.
+ */
+public class LivePairs {
+
+    /**
+     * Pairs whose last interval is open, by process
+     */
+    private final HashMap<Integer, LongHashSet> open = new HashMap<>();
+    /**
+     * Pairs which started again before they ended, they are live until the end of the logs
+     */
+    private final HashMap<Integer, LongHashSet> stuck = new HashMap<>();
+    private final HashMap<Integer, int[]> processCounts = new HashMap<>();
+    private int count = 0;
+
+    /**
+     * Opens a new interval of the pair
+     * @param processId process of the START log
+     * @param threadId thread of the START log
+     * @return true if the pair was not live before
+     */
+    public boolean start(int processId, long threadId) {
+        if(!set(open, processId).add(threadId)) {
+            //The last interval is left open for good
+            set(stuck, processId).add(threadId);
+            return false;
+        }
+        if(contains(stuck, processId, threadId)) {
+            return false;
+        }
+        count++;
+        processCounts.computeIfAbsent(processId, p -> new int[1])[0]++;
+        return true;
+    }
+
+    /**
+     * Closes the last interval of the pair, if it is open
+     * @param processId process of the END log
+     * @param threadId thread of the END log
+     * @return true if the pair is no longer live
+     */
+    public boolean end(int processId, long threadId) {
+        LongHashSet threads = open.get(processId);
+        if(threads == null || !threads.remove(threadId) || contains(stuck, processId, threadId)) {
+            return false;
+        }
+        count--;
+        processCounts.get(processId)[0]--;
+        return true;
+    }
+
+    /**
+     * Getter for the number of live pairs
+     * @return live pairs of all the processes
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Getter for the number of live pairs of a process
+     * @param processId process of the pairs
+     * @return live pairs of the process
+     */
+    public int size(int processId) {
+        int[] processCount = processCounts.get(processId);
+        return processCount == null ? 0 : processCount[0];
+    }
+
+    /**
+     * Getter for the processes with a live pair, or with a pair which was live
+     * @return process ids in no particular order
+     */
+    public Set<Integer> getProcessIds() {
+        return processCounts.keySet();
+    }
+
+    /**
+     * Removes all the pairs
+     */
+    public void clear() {
+        open.clear();
+        stuck.clear();
+        processCounts.clear();
+        count = 0;
+    }
+
+    private static LongHashSet set(HashMap<Integer, LongHashSet> sets, int processId) {
+        LongHashSet threads = sets.get(processId);
+        if(threads == null) {
+            threads = new LongHashSet();
+            sets.put(processId, threads);
+        }
+        return threads;
+    }
+
+    private static boolean contains(HashMap<Integer, LongHashSet> sets, int processId, long threadId) {
+        LongHashSet threads = sets.get(processId);
+        return threads != null && threads.contains(threadId);
+    }
+
+    /**
+     * This method formats the pairs as processId:threadId separated by commas, for the checkpoint.
+     * @param stuckPairs true for the pairs left open for good, false for the pairs whose last interval is open
+     * @return formatted pairs
+     */
+    public String format(boolean stuckPairs) {
+        StringBuilder pairs = new StringBuilder();
+        for(Map.Entry<Integer, LongHashSet> process : (stuckPairs ? stuck : open).entrySet()) {
+            for(long threadId : process.getValue().toArray()) {
+                pairs.append(pairs.length() > 0 ? "," : "").append(process.getKey()).append(':').append(threadId);
+            }
+        }
+        return pairs.toString();
+    }
+
+    /**
+     * This method adds the pairs formatted by format.
+     * @param pairs formatted pairs, may be empty
+     * @param stuckPairs true for the pairs left open for good, false for the pairs whose last interval is open
+     */
+    public void parse(String pairs, boolean stuckPairs) {
+        for(String pair : pairs.split(",")) {
+            if(!pair.isEmpty()) {
+                int split = pair.indexOf(':');
+                add(Integer.parseInt(pair.substring(0, split)), Long.parseLong(pair.substring(split + 1)), stuckPairs);
+            }
+        }
+    }
+
+    private void add(int processId, long threadId, boolean stuckPair) {
+        boolean live = contains(open, processId, threadId) || contains(stuck, processId, threadId);
+        set(stuckPair ? stuck : open, processId).add(threadId);
+        if(!live) {
+            count++;
+            processCounts.computeIfAbsent(processId, p -> new int[1])[0]++;
+        }
+    }
+
+    /**
+     * This method writes the pairs as the number of pairs followed by processId (int), threadId (long) and whether the
+     * pair is left open for good (boolean) for every pair.
+     * @param out output of the pairs
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        int pairs = 0;
+        for(LongHashSet threads : open.values()) {
+            pairs += threads.size();
+        }
+        for(LongHashSet threads : stuck.values()) {
+            pairs += threads.size();
+        }
+        out.writeInt(pairs);
+        for(boolean stuckPairs : new boolean[] {false, true}) {
+            for(Map.Entry<Integer, LongHashSet> process : (stuckPairs ? stuck : open).entrySet()) {
+                for(long threadId : process.getValue().toArray()) {
+                    out.writeInt(process.getKey());
+                    out.writeLong(threadId);
+                    out.writeBoolean(stuckPairs);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method adds the pairs written by write.
+     * @param in input of the pairs
+     * @throws IOException
+     */
+    public void read(DataInput in) throws IOException {
+        for(int i = in.readInt(); i > 0; i--) {
+            add(in.readInt(), in.readLong(), in.readBoolean());
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * LogBenchmark class measures the steps of the sanitization and of the APIs on a Log dump. Every benchmark is run a
+ * number of times to warm up the JIT and then measured a number of times, the average and the best time of the
+ * measured runs are reported along with the number of operations (logs, intervals or queries) per second.
+ * The dump is written by the LogDumpGenerator if the folder doesn't exist yet, all the other options are passed on
+ * to the generator. The sanitized files and the sidecar are written to the work folder, Resources/ is not touched.
+ * Usage : LogBenchmark [--dump=folder] [--work=folder] [--warmup=N] [--iterations=N] [--only=name,...]
+ * [generator options]
+ */
+public class LogBenchmark {
+
+    /**
+     * Number of logs kept in memory for the writer benchmark
+     */
+    private static final int MAX_WRITER_LOGS = 1000000;
+    private static final int QUERIES = 1000;
+
+    /**
+     * A single benchmark, setUp is not measured
+     */
+    private interface Benchmark {
+        default void setUp() throws Exception {
+        }
+
+        /**
+         * @return number of operations of the run
+         */
+        long run() throws Exception;
+    }
+
+    private static String dumpPath = "Resources/GeneratedLogDump";
+    private static String workPath = "Resources/benchmark";
+    private static long firstTimestamp = Long.MAX_VALUE;
+    private static long lastTimestamp = Long.MIN_VALUE;
+    private static long totalLogs = 0;
+    private static final List<LogLine> writerLogs = new ArrayList<>();
+
+    /**
+     * The main method generates the dump if it is missing and runs the benchmarks.
+     * @param args options of the benchmark, see the usage of the class
+     * @throws Exception In case a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        int warmup = 2;
+        int iterations = 5;
+        Set<String> only = new HashSet<>();
+        LogDumpGenerator generator = new LogDumpGenerator();
+        for(String arg : args) {
+            int split = arg.indexOf('=');
+            if(!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Invalid option : " + arg);
+            }
+            String name = arg.substring(2, split);
+            String value = arg.substring(split + 1);
+            switch(name) {
+                case "dump": dumpPath = value; break;
+                case "work": workPath = value; break;
+                case "warmup": warmup = Integer.parseInt(value); break;
+                case "iterations": iterations = Integer.parseInt(value); break;
+                case "only": only.addAll(Arrays.asList(value.split(","))); break;
+                default: generator.set(name, value);
+            }
+        }
+        if(!new File(dumpPath).isDirectory()) {
+            generator.set("out", dumpPath).generate();
+        }
+        new File(workPath).mkdirs();
+        prepare();
+
+        Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("parse", LogBenchmark::parse);
+        benchmarks.put("textSource", () -> readSources(false));
+        benchmarks.put("mappedSource", () -> readSources(true));
+        int cores = Runtime.getRuntime().availableProcessors();
+        benchmarks.put("mergeKFiles", sanitize(false, 1, 0));
+        benchmarks.put("mergeKFilesMappedSharded", sanitize(true, cores, 0));
+        benchmarks.put("mergeKFilesReadAhead", sanitize(false, 1, cores));
+        benchmarks.put("writeToFile", writeToFile());
+        benchmarks.put("storeLogInterval", loadIntervals(false));
+        benchmarks.put("loadSidecar", loadIntervals(true));
+        benchmarks.put("getActiveThreads", getActiveThreads());
+
+        System.out.println(String.format(Locale.ROOT, "%-26s %12s %12s %16s", "benchmark", "avg ms", "best ms",
+                "ops/s"));
+        for(Map.Entry<String, Benchmark> benchmark : benchmarks.entrySet()) {
+            if(only.isEmpty() || only.contains(benchmark.getKey())) {
+                measure(benchmark.getKey(), benchmark.getValue(), warmup, iterations);
+            }
+        }
+    }
+
+    private static void measure(String name, Benchmark benchmark, int warmup, int iterations) throws Exception {
+        for(int i = 0; i < warmup; i++) {
+            benchmark.setUp();
+            benchmark.run();
+        }
+        long total = 0;
+        long best = Long.MAX_VALUE;
+        long operations = 0;
+        for(int i = 0; i < iterations; i++) {
+            benchmark.setUp();
+            long begin = System.nanoTime();
+            operations = benchmark.run();
+            long time = System.nanoTime() - begin;
+            total += time;
+            best = Math.min(best, time);
+        }
+        double average = total / (double) iterations;
+        System.out.println(String.format(Locale.ROOT, "%-26s %12.1f %12.1f %16.0f", name, average / 1e6, best / 1e6,
+                operations / (average / 1e9)));
+    }
+
+    /**
+     * Reads the dump once for the range of its timestamps and the logs of the writer benchmark.
+     */
+    private static void prepare() throws IOException, ParseException {
+        int fileId = 0;
+        for(File f : listDump()) {
+            try(LogSource source = new TextLogSource(f, fileId++)) {
+                for(LogLine log = source.next(); log != null; log = source.next()) {
+                    firstTimestamp = Math.min(firstTimestamp, log.getTimestamp());
+                    lastTimestamp = Math.max(lastTimestamp, log.getTimestamp());
+                    totalLogs++;
+                    if(writerLogs.size() < MAX_WRITER_LOGS) {
+                        writerLogs.add(log);
+                    }
+                }
+            }
+        }
+    }
+
+    private static File[] listDump() {
+        File[] files = new File(dumpPath).listFiles(File::isFile);
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Parses the first line of every log with the LogParser
+     */
+    private static long parse() throws IOException, ParseException {
+        LogParser parser = new LogParser();
+        long logs = 0;
+        for(File f : listDump()) {
+            try(BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(f),
+                    StandardCharsets.UTF_8))) {
+                for(String s = reader.readLine(); s != null; s = reader.readLine()) {
+                    if(LogParser.isLogStart(s)) {
+                        parser.parse(s);
+                        logs++;
+                    }
+                }
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * Reads every log of the dump through the LogSources, including the breaks of the log statements
+     */
+    private static long readSources(boolean mapped) throws IOException, ParseException {
+        long logs = 0;
+        int fileId = 0;
+        for(File f : listDump()) {
+            try(LogSource source = mapped ? new MappedLogSource(f, fileId) : new TextLogSource(f, fileId)) {
+                while(source.next() != null) {
+                    logs++;
+                }
+            }
+            fileId++;
+        }
+        return logs;
+    }
+
+    /**
+     * Sanitizes the whole dump into the work folder, the sanitized files of the previous run are deleted first
+     */
+    private static Benchmark sanitize(boolean mapped, int shards, int readAhead) {
+        return new Benchmark() {
+            @Override
+            public void setUp() {
+                delete(new File(workPath, "sanitizedLogs"));
+                new File(workPath, "sanitizedLogs").mkdirs();
+                SanitizeFiles.setPaths(dumpPath, workPath);
+                SanitizeFiles.setOptions(mapped, shards);
+                SanitizeFiles.setReadAhead(readAhead);
+            }
+
+            @Override
+            public long run() throws Exception {
+                SanitizeFiles.readLogFiles();
+                return totalLogs;
+            }
+        };
+    }
+
+    /**
+     * Writes the logs kept in memory through a LogWriterPool
+     */
+    private static Benchmark writeToFile() {
+        File folder = new File(workPath, "writerPool");
+        return new Benchmark() {
+            @Override
+            public void setUp() {
+                delete(folder);
+                folder.mkdirs();
+            }
+
+            @Override
+            public long run() throws IOException {
+                try(LogWriterPool pool = new LogWriterPool(folder.getPath())) {
+                    for(LogLine log : writerLogs) {
+                        pool.write(log);
+                    }
+                }
+                return writerLogs.size();
+            }
+        };
+    }
+
+    /**
+     * Loads the intervals of the sanitized files of the work folder, either by parsing the sanitized files or from
+     * the sidecar. The dump is sanitized first if it has not been.
+     */
+    private static Benchmark loadIntervals(boolean sidecar) {
+        return new Benchmark() {
+            @Override
+            public void setUp() throws Exception {
+                if(!new File(workPath, "intervals.idx").exists()) {
+                    sanitize(true, Runtime.getRuntime().availableProcessors(), 0).setUp();
+                    SanitizeFiles.readLogFiles();
+                }
+                BasicAPI.setIntervalsPath(sidecar ? workPath + "/intervals.idx" : workPath + "/missing.idx");
+            }
+
+            @Override
+            public long run() throws Exception {
+                BasicAPI.loadIntervals(workPath + "/sanitizedLogs");
+                return totalLogs;
+            }
+        };
+    }
+
+    /**
+     * Queries random time ranges of the dump, the intervals are loaded from the sidecar first
+     */
+    private static Benchmark getActiveThreads() {
+        Writer discard = new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        return new Benchmark() {
+            @Override
+            public void setUp() throws Exception {
+                loadIntervals(true).setUp();
+                BasicAPI.loadIntervals(workPath + "/sanitizedLogs");
+            }
+
+            @Override
+            public long run() throws Exception {
+                Random random = new Random(7);
+                long range = Math.max(1, lastTimestamp - firstTimestamp);
+                for(int i = 0; i < QUERIES; i++) {
+                    long t1 = firstTimestamp + (long) (random.nextDouble() * range);
+                    long t2 = t1 + random.nextInt(10000);
+                    BasicAPI.getActiveThreads(LogParser.formatTimestamp(t1), LogParser.formatTimestamp(t2),
+                            workPath + "/sanitizedLogs", discard);
+                }
+                return QUERIES;
+            }
+        };
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,224 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * LogDumpGenerator class writes a synthetic Log dump in the same format as Resources/AssignmentLogDump, a single Log
+ * file per process with logs of the format "pid:tid::Thread-N yyyy-MM-dd HH:mm:ss,SSS - logStatement". It is used to
+ * measure the sanitization and the APIs on dumps much larger than the sample files.
+ * Every thread of a process is spawned again and again: it logs a START, a number of log statements and an END. The
+ * threads of a process run at the same time, so their logs are interleaved in the order of their timestamps. A part
+ * of the log statements get breaks, and a part of the logs are written with a timestamp earlier than the log before
+ * them, as in the sample files.
+ * The dump only depends on the options and the seed, so the same dump is written on every run. The logs are written as
+ * they are generated and only the state of the running threads is kept, so the size of the dump is not limited by the
+ * memory.
+ * Usage : LogDumpGenerator [--out=folder] [--processes=N] [--threads=N] [--lines=N] [--spawns=N] [--multiline=ratio]
+ * [--outOfOrder=ratio] [--seed=N]
+ */
+public class LogDumpGenerator {
+
+    private static final long FIRST_THREAD_ID = 123145300000000L;
+    private static final long THREAD_ID_STEP = 4206592L;
+    private static final String[] STATEMENTS = {
+            "Starting new HTTPS connection (1): en.wikipedia.org",
+            "https://en.wikipedia.org:443 \"GET /wiki/Special:Random HTTP/1.1\" 302 0",
+            "https://en.wikipedia.org:443 \"GET /wiki/Main_Page HTTP/1.1\" 200 None",
+            "Resetting dropped connection: en.wikipedia.org",
+            "Fetched the summary of the article"
+    };
+    private static final String[] BREAKS = {
+            "Paul (name), a given name (includes a list of people with that name)",
+            "",
+            "   at yashdoshi.eightfoldchallenge.Crawler.fetch(Crawler.java:42)",
+            "The article was moved to a new title; the old title redirects to it."
+    };
+
+    private String folderPath = "Resources/GeneratedLogDump";
+    private int processes = 5;
+    private int threads = 250;
+    private int linesPerThread = 5;
+    private int spawns = 10;
+    private double multilineRatio = 0.05;
+    private double outOfOrderRatio = 0.001;
+    private long seed = 42;
+    private long startTime = LogParser.toMillis(2020, 8, 9, 18, 59, 25, 0);
+
+    /**
+     * The main method reads the options and writes the Log files of all the processes in parallel.
+     * @param args options of the dump, see the usage of the class
+     * @throws Exception In case a Log file cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        LogDumpGenerator generator = new LogDumpGenerator();
+        for(String arg : args) {
+            int split = arg.indexOf('=');
+            if(!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Invalid option : " + arg);
+            }
+            generator.set(arg.substring(2, split), arg.substring(split + 1));
+        }
+        long begin = System.nanoTime();
+        long bytes = generator.generate();
+        System.out.println("Generated " + bytes / (1024 * 1024) + " MB in " + generator.folderPath + " in "
+                + (System.nanoTime() - begin) / 1000000 + " ms");
+    }
+
+    /**
+     * Sets a single option of the dump
+     * @param name name of the option
+     * @param value value of the option
+     * @return the generator
+     */
+    public LogDumpGenerator set(String name, String value) {
+        switch(name) {
+            case "out": folderPath = value; break;
+            case "processes": processes = Integer.parseInt(value); break;
+            case "threads": threads = Integer.parseInt(value); break;
+            case "lines": linesPerThread = Integer.parseInt(value); break;
+            case "spawns": spawns = Integer.parseInt(value); break;
+            case "multiline": multilineRatio = Double.parseDouble(value); break;
+            case "outOfOrder": outOfOrderRatio = Double.parseDouble(value); break;
+            case "seed": seed = Long.parseLong(value); break;
+            default: throw new IllegalArgumentException("Unknown option : " + name);
+        }
+        return this;
+    }
+
+    /**
+     * This method writes the Log file of every process into the folder of the dump.
+     * @return number of bytes written
+     * @throws Exception In case a Log file cannot be written
+     */
+    public long generate() throws Exception {
+        File folder = new File(folderPath);
+        folder.mkdirs();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(processes,
+                Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<Long>> files = new ArrayList<>();
+            for(int i = 0; i < processes; i++) {
+                int process = i;
+                files.add(pool.submit(() -> writeProcess(new File(folder, (process + 1) + ".log"), process)));
+            }
+            long bytes = 0;
+            for(Future<Long> file : files) {
+                bytes += file.get();
+            }
+            return bytes;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * This method writes the Log file of a single process. The next log of every thread is kept in a priority queue on
+     * its timestamp, and the thread of the earliest log writes its log and schedules its next one.
+     * @param f Log file of the process
+     * @param process index of the process
+     * @return number of bytes written
+     * @throws IOException
+     */
+    private long writeProcess(File f, int process) throws IOException {
+        //Every process gets its own random numbers, so the files do not depend on the order they are written in
+        SplittableRandom random = new SplittableRandom(seed * 31 + process);
+        int processId = 8002 + process;
+        //{next timestamp, thread number, logs left in the current spawn, spawns left}
+        PriorityQueue<long[]> running = new PriorityQueue<>((o1, o2) -> o1[0] != o2[0]
+                ? Long.compare(o1[0], o2[0]) : Long.compare(o1[1], o2[1]));
+        for(int thread = 0; thread < threads; thread++) {
+            running.offer(new long[]{startTime + random.nextInt(1000), thread, linesPerThread + 2, spawns});
+        }
+
+        CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(f));
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(counter, StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder sb = new StringBuilder(256);
+            long last = startTime;
+            while(!running.isEmpty()) {
+                long[] next = running.poll();
+                int thread = (int) next[1];
+                long left = next[2];
+                String statement;
+                if(left == linesPerThread + 2) {
+                    statement = "**START**";
+                }
+                else if(left == 1) {
+                    statement = "**END**";
+                }
+                else {
+                    statement = STATEMENTS[random.nextInt(STATEMENTS.length)];
+                }
+                long timestamp = next[0];
+                if(random.nextDouble() < outOfOrderRatio) {
+                    timestamp = Math.max(startTime, last - random.nextInt(1, 50));
+                }
+                last = Math.max(last, next[0]);
+
+                sb.setLength(0);
+                sb.append(processId).append(':').append(FIRST_THREAD_ID + thread * THREAD_ID_STEP).append("::Thread-")
+                        .append(thread).append(' ');
+                appendTimestamp(sb, timestamp);
+                sb.append(" - ").append(statement).append('\n');
+                if(left > 1 && left < linesPerThread + 2 && random.nextDouble() < multilineRatio) {
+                    int breaks = random.nextInt(1, 4);
+                    for(int i = 0; i < breaks; i++) {
+                        sb.append(BREAKS[random.nextInt(BREAKS.length)]).append('\n');
+                    }
+                }
+                writer.append(sb);
+
+                if(left > 1) {
+                    running.offer(new long[]{next[0] + random.nextInt(1, 4000), thread, left - 1, next[3]});
+                }
+                else if(next[3] > 1) {
+                    //The thread is spawned again after a pause
+                    running.offer(new long[]{next[0] + random.nextInt(1, 2000), thread, linesPerThread + 2,
+                            next[3] - 1});
+                }
+            }
+        }
+        return counter.count;
+    }
+
+    /**
+     * Appends the timestamp in the layout of the Log files, "yyyy-MM-dd HH:mm:ss,SSS"
+     */
+    private static void appendTimestamp(StringBuilder sb, long millis) {
+        int length = sb.length();
+        LogParser.appendTimestamp(sb, millis);
+        //The sanitized layout drops the trailing zeros of the millis, the Log files always have 3 digits
+        int fraction = sb.length() - (length + 20);
+        sb.setCharAt(length + 19, ',');
+        for(int i = fraction; i < 3; i++) {
+            sb.append('0');
+        }
+    }
+
+    /**
+     * OutputStream counting the bytes written to the file
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
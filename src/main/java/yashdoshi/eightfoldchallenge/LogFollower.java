@@ -0,0 +1,212 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParseException;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * LogFollower class is used by the follow mode of SanitizeFiles to pick up the logs which are appended to the Log files
+ * after they were sanitized. For every Log file, the checkpoint keeps the offset up to which the file has been
+ * sanitized. A poll reads the logs after these offsets, sorts them on their timestamp and sanitizes them, and then
+ * writes the new offsets and the state of the concurrent threads into the checkpoint. A restart continues from the
+ * checkpoint instead of reading the files again.
+ * The last log of a file is held back while the file is growing, since the breaks of its log statement may not be
+ * written yet. It is sanitized once the next log is written after it, or once the file has not grown for a poll.
+ * The logs of a poll are only sorted among themselves, logs which are appended with an older timestamp than logs of
+ * the previous poll are written after them.
+ * The checkpoint also keeps a CRC32 of the head of every file (its first bytes, up to 4 KB, which were sanitized). A
+ * file whose head changed was rotated or replaced, and is followed from its beginning. A file which shrank but kept its
+ * head was truncated to logs which are already sanitized, so it is followed from its new size instead of sanitizing
+ * them again.
+ */
+public class LogFollower {
+
+    private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    /**
+     * At the most these many bytes are read from a single file in one poll, so a poll never holds a whole file
+     */
+    private static final long MAX_BYTES_PER_POLL = 64L * 1024 * 1024;
+    /**
+     * Number of bytes at the beginning of a file which are checked to find out whether it was rotated
+     */
+    private static final int HEAD_SIZE = 4 * 1024;
+
+    private final String logFilesPath;
+    private final String checkpointPath;
+    private final Properties checkpoint = new Properties();
+    /**
+     * Size of every file at the previous poll, to find the files which stopped growing
+     */
+    private final Map<String, Long> previousSizes = new HashMap<>();
+
+    /**
+     * Creates a follower which continues from the checkpoint, if there is one.
+     * @param logFilesPath folder of the Log files
+     * @param checkpointPath file of the checkpoint
+     * @throws IOException
+     */
+    public LogFollower(String logFilesPath, String checkpointPath) throws IOException {
+        this.logFilesPath = logFilesPath;
+        this.checkpointPath = checkpointPath;
+        File f = new File(checkpointPath);
+        if(f.exists()) {
+            try(InputStream in = new FileInputStream(f)) {
+                checkpoint.load(in);
+            }
+            SanitizeFiles.loadState(checkpoint);
+        }
+    }
+
+    /**
+     * This method sanitizes the logs written after the offsets of the checkpoint and updates the checkpoint.
+     * @return number of new logs
+     * @throws IOException
+     * @throws ParseException
+     */
+    public int poll() throws IOException, ParseException {
+        File[] listOfFiles = new File(logFilesPath).listFiles();
+        if(listOfFiles == null) {
+            return 0;
+        }
+        Arrays.sort(listOfFiles);
+        List<MappedLogSource> sources = new ArrayList<>();
+        List<LogLine> logs = new ArrayList<>();
+        Map<String, Long> offsets = new HashMap<>();
+        Map<String, Long> heads = new HashMap<>();
+        try {
+            for(File f : listOfFiles) {
+                if(f.isDirectory()) {
+                    continue;
+                }
+                String name = f.getName();
+                long offset = getOffset(checkpoint, name);
+                long size = f.length();
+                boolean moved = false;
+                if(size != offset) {
+                    long head = getHead(checkpoint, name);
+                    if(head < 0 ? size < offset : getHead(f, offset) != head) {
+                        System.out.println("Log file " + name + " was rotated, it is followed from its beginning");
+                        offset = 0;
+                        moved = true;
+                    }
+                    else if(size < offset) {
+                        System.out.println("Log file " + name + " was truncated to " + size + " bytes which are"
+                                + " already sanitized, it is followed from there");
+                        offset = size;
+                        moved = true;
+                    }
+                }
+                boolean growing = !Long.valueOf(size).equals(previousSizes.get(name));
+                previousSizes.put(name, size);
+                if(size == offset) {
+                    if(moved) {
+                        offsets.put(name, offset);
+                        heads.put(name, getHead(f, offset));
+                    }
+                    continue;
+                }
+                long to = Math.min(size, offset + MAX_BYTES_PER_POLL);
+                MappedLogSource source = new MappedLogSource(f, sources.size(), WINDOW_SIZE, offset, to,
+                        growing || to < size);
+                sources.add(source);
+                LogLine log = source.next();
+                while(log != null) {
+                    logs.add(log);
+                    log = source.next();
+                }
+                offsets.put(name, source.getFilePosition());
+                if(moved || offset < HEAD_SIZE || getHead(checkpoint, name) < 0) {
+                    //The head only changes until HEAD_SIZE bytes of the file are sanitized
+                    heads.put(name, getHead(f, source.getFilePosition()));
+                }
+            }
+            if(logs.isEmpty()) {
+                if(!heads.isEmpty()) {
+                    writeCheckpoint(checkpointPath, checkpoint, offsets, heads);
+                }
+                return 0;
+            }
+            //The sort is stable, so the logs of a file stay in their order
+            logs.sort((o1, o2) -> Long.compare(o1.getTimestamp(), o2.getTimestamp()));
+            SanitizeFiles.writeLogs(logs);
+        } finally {
+            for(MappedLogSource source : sources) {
+                source.close();
+            }
+        }
+        writeCheckpoint(checkpointPath, checkpoint, offsets, heads);
+        return logs.size();
+    }
+
+    /**
+     * This method writes the checkpoint after the Log files have been sanitized once, with the size of every file as
+     * its offset, and the head of every file.
+     * @param checkpointPath file of the checkpoint
+     * @param logFilesPath folder of the Log files
+     * @param offsets offset of every Log file
+     * @throws IOException
+     */
+    public static void writeCheckpoint(String checkpointPath, String logFilesPath, Map<String, Long> offsets)
+            throws IOException {
+        Map<String, Long> heads = new HashMap<>();
+        for(Map.Entry<String, Long> offset : offsets.entrySet()) {
+            heads.put(offset.getKey(), getHead(new File(logFilesPath, offset.getKey()), offset.getValue()));
+        }
+        writeCheckpoint(checkpointPath, new Properties(), offsets, heads);
+    }
+
+    /**
+     * This method writes the offsets and the state of the concurrent threads to a temporary file which then replaces
+     * the checkpoint, so a checkpoint is never partially written.
+     */
+    private static void writeCheckpoint(String checkpointPath, Properties checkpoint, Map<String, Long> offsets,
+            Map<String, Long> heads) throws IOException {
+        for(Map.Entry<String, Long> offset : offsets.entrySet()) {
+            checkpoint.setProperty("offset." + offset.getKey(), String.valueOf(offset.getValue()));
+        }
+        for(Map.Entry<String, Long> head : heads.entrySet()) {
+            checkpoint.setProperty("head." + head.getKey(), String.valueOf(head.getValue()));
+        }
+        SanitizeFiles.saveState(checkpoint);
+        File f = new File(checkpointPath);
+        File temp = new File(checkpointPath + ".tmp");
+        try(OutputStream out = new FileOutputStream(temp)) {
+            checkpoint.store(out, "Offsets of the sanitized Log files");
+        }
+        Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long getOffset(Properties checkpoint, String name) {
+        return Long.parseLong(checkpoint.getProperty("offset." + name, "0"));
+    }
+
+    /**
+     * @return head of the file in the checkpoint, -1 for a checkpoint written before the heads were kept
+     */
+    private static long getHead(Properties checkpoint, String name) {
+        return Long.parseLong(checkpoint.getProperty("head." + name, "-1"));
+    }
+
+    /**
+     * This method computes the CRC32 of the first bytes of a file which were sanitized, up to HEAD_SIZE.
+     * @param f Log file
+     * @param offset offset up to which the file has been sanitized
+     * @return CRC32 of the head, or -1 if the file is now shorter than the head
+     * @throws IOException
+     */
+    private static long getHead(File f, long offset) throws IOException {
+        byte[] head = new byte[(int) Math.min(offset, HEAD_SIZE)];
+        try(RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            if(file.length() < head.length) {
+                return -1;
+            }
+            file.readFully(head);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(head);
+        return crc.getValue();
+    }
+}
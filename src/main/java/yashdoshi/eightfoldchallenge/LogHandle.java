@@ -0,0 +1,91 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * LogHandle class refers to the logs of a single thread/user-request in a SegmentStore, by the chain of extents of the
+ * thread. BasicAPI returns a handle for every active thread instead of the path of a sanitized file, and the logs are
+ * fetched with a scatter read of the extents.
+ */
+public class LogHandle {
+
+    private final SegmentStore store;
+    private final long threadId;
+    private final List<SegmentStore.Extent> extents;
+
+    LogHandle(SegmentStore store, long threadId, List<SegmentStore.Extent> extents) {
+        this.store = store;
+        this.threadId = threadId;
+        this.extents = extents;
+    }
+
+    /**
+     * Getter for the thread/user-request id
+     * @return thread id of the logs
+     */
+    public long getThreadId() {
+        return threadId;
+    }
+
+    /**
+     * Getter for the extents of the logs
+     * @return extents in the order they were written
+     */
+    public List<SegmentStore.Extent> getExtents() {
+        return extents;
+    }
+
+    /**
+     * Getter for the size of the logs
+     * @return number of bytes over all the extents
+     */
+    public long getLength() {
+        long length = 0;
+        for(SegmentStore.Extent extent : extents) {
+            length += extent.getLength();
+        }
+        return length;
+    }
+
+    /**
+     * This method reads all the extents of the thread into a single buffer. The bytes are the same as the sanitized
+     * file of the thread.
+     * @return logs of the thread
+     * @throws IOException
+     */
+    public byte[] read() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) getLength());
+        for(SegmentStore.Extent extent : extents) {
+            store.read(extent, buffer);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * This method writes the logs of the thread to the stream.
+     * @param out stream the logs are written to
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(0);
+        for(SegmentStore.Extent extent : extents) {
+            if(buffer.capacity() < extent.getLength()) {
+                buffer = ByteBuffer.allocate(extent.getLength());
+            }
+            buffer.clear();
+            store.read(extent, buffer);
+            out.write(buffer.array(), 0, extent.getLength());
+        }
+    }
+
+    /**
+     * The handle is written as the folder of the store and the thread id, followed by the size of the chain
+     */
+    @Override
+    public String toString() {
+        return store.getFolder().getPath() + "#" + threadId + " (" + extents.size() + " extents, " + getLength()
+                + " bytes)";
+    }
+}
@@ -1,22 +1,46 @@
 package yashdoshi.eightfoldchallenge;
 
-import java.sql.Timestamp;
+import java.nio.ByteBuffer;
 
 /**
- * LogLine class maintains a single log from the Log files.
+ * LogLine class maintains a single log from the Log files. The timestamp is in milliseconds as read by the LogParser.
+ * A log read by the MappedLogSource keeps the offsets of its bytes in the mapped file instead of the thread name and
+ * log statement, which are only decoded if they are asked for.
  */
 public class LogLine {
     public int processId;
-    public String threadId;
+    public long threadId;
     public String threadName;
-    public Timestamp timestamp;
+    public long timestamp;
     public String logStatement;
     /**
      * fileId is used to maintain the Un-sanitized Log file from which the log was polled
      */
     public int fileId;
 
-    LogLine(int pId, String tId, String tName, Timestamp t1, String statement, int fileId) {
+    /**
+     * Mapped bytes of the Log file holding this log, null if the log was read as text
+     */
+    ByteBuffer rawBuffer;
+    int rawStart;
+    int rawThreadNameStart;
+    /**
+     * The header "pid:tid::threadName " is in between rawStart and rawTimestampStart
+     */
+    int rawTimestampStart;
+    /**
+     * Trimmed log statement on the first line of the log
+     */
+    int rawStatementStart;
+    int rawStatementEnd;
+    /**
+     * End of the first line of the log, the lines in between rawLineEnd and rawEnd are the breaks in the statement
+     * including the '\n' before each of them
+     */
+    int rawLineEnd;
+    int rawEnd;
+
+    LogLine(int pId, long tId, String tName, long t1, String statement, int fileId) {
         this.processId = pId;
         this.threadId = tId;
         this.threadName = tName;
@@ -25,14 +49,58 @@ public class LogLine {
         this.fileId = fileId;
 
     }
+
+    /**
+     * Creates a log which refers to its bytes in a mapped Log file.
+     */
+    LogLine(int pId, long tId, long t1, int fileId, ByteBuffer rawBuffer, int rawStart, int rawThreadNameStart,
+            int rawTimestampStart, int rawStatementStart, int rawStatementEnd, int rawLineEnd, int rawEnd) {
+        this(pId, tId, null, t1, null, fileId);
+        this.rawBuffer = rawBuffer;
+        this.rawStart = rawStart;
+        this.rawThreadNameStart = rawThreadNameStart;
+        this.rawTimestampStart = rawTimestampStart;
+        this.rawStatementStart = rawStatementStart;
+        this.rawStatementEnd = rawStatementEnd;
+        this.rawLineEnd = rawLineEnd;
+        this.rawEnd = rawEnd;
+    }
+
+    /**
+     * Checks if the log refers to its bytes in a mapped Log file
+     * @return true if the log was read by the MappedLogSource
+     */
+    public boolean hasRawLog() {
+        return rawBuffer != null;
+    }
     /**
      * Getter for Log timestamp
      * @return timestamp of the log
      */
-    public Timestamp getTimestamp() {
+    public long getTimestamp() {
         return timestamp;
     }
 
+    /**
+     * Checks if the log statement is equal to the text, without decoding a log read by the MappedLogSource.
+     * @param text text to compare the log statement with
+     * @return true if the log statement is the text
+     */
+    public boolean statementEquals(String text) {
+        if(rawBuffer == null || logStatement != null) {
+            return text.equals(logStatement);
+        }
+        if(rawLineEnd != rawEnd || rawStatementEnd - rawStatementStart != text.length()) {
+            return false;
+        }
+        for(int i = 0; i < text.length(); i++) {
+            if(rawBuffer.get(rawStatementStart + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Getter for fileId of the Log file from where the log was polled
      * @return fileId of the log
@@ -46,6 +114,12 @@ public class LogLine {
      * @return logStatement of the particular Log
      */
     public String getLogStatement() {
+        if(logStatement == null && rawBuffer != null) {
+            logStatement = ByteSequence.decode(rawBuffer, rawStatementStart, rawStatementEnd);
+            if(rawLineEnd < rawEnd) {
+                logStatement += ByteSequence.decode(rawBuffer, rawLineEnd, rawEnd);
+            }
+        }
         return logStatement;
     }
 
@@ -61,7 +135,7 @@ public class LogLine {
      * Getter for the thread id of the Log
      * @return threadId of the log
      */
-    public String getThreadId() {
+    public long getThreadId() {
         return threadId;
     }
 
@@ -70,7 +144,27 @@ public class LogLine {
      * @return threadName of the log
      */
     public String getThreadName() {
+        if(threadName == null && rawBuffer != null) {
+            threadName = ByteSequence.decode(rawBuffer, rawThreadNameStart, rawTimestampStart - 1);
+        }
         return threadName;
     }
 
+    /**
+     * This method is used to parse the LogLine object back to string to write to a file. StringBuilder is used as
+     * string concatenation is time consuming.
+     * @return A string which is to be written to the corresponding Thread/user-request file
+     */
+    public String getLog() {
+        StringBuilder logLine = new StringBuilder();
+        logLine.append(getProcessId());
+        logLine.append(":");
+        logLine.append(getThreadId());
+        logLine.append("::");
+        logLine.append(getThreadName()).append(' ');
+        LogParser.appendTimestamp(logLine, getTimestamp());
+        logLine.append(" - ");
+        logLine.append(getLogStatement());
+        return logLine.toString();
+    }
 }
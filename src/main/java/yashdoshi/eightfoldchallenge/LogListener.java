@@ -0,0 +1,16 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.IOException;
+
+/**
+ * LogListener interface is called for every log while the Log files are sanitized, in the order the logs are merged.
+ */
+public interface LogListener {
+
+    /**
+     * Called for a single log before it is written to its thread/user-request file
+     * @param log log polled from the merge
+     * @throws IOException
+     */
+    void onLog(LogLine log) throws IOException;
+}
@@ -0,0 +1,272 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.text.ParseException;
+
+/**
+ * LogParser class parses a single log of the format "pid:tid::threadName yyyy-MM-dd HH:mm:ss,SSS - logStatement"
+ * directly from the characters of the line. The processId, threadId and timestamp are read into primitives and the
+ * thread name and log statement are only returned as offsets into the line, so parsing a log does not allocate.
+ * The timestamp is read in the fixed layout into milliseconds. The wall clock time written in the log is taken as is
+ * (without any time zone), so formatting the millis back gives the same text on every machine. Both ',' and '.' are
+ * accepted before the milliseconds and the milliseconds can have less than 3 digits, which is how the sanitized logs
+ * are written.
+ * A parser instance holds the result of the last parsed log, so it must not be shared between threads.
+ */
+public class LogParser {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    public int processId;
+    public long threadId;
+    public long timestamp;
+    public int threadNameStart;
+    public int threadNameEnd;
+    /**
+     * Offsets of the trimmed log statement in the line
+     */
+    public int statementStart;
+    public int statementEnd;
+
+    /**
+     * This method checks if the line begins with "pid:tid::", which is the first line of a log. Log statements can
+     * contain breaks, the lines after the first line of the log do not begin with it.
+     * @param s a single line of the log file
+     * @return true if the line is the first line of a log
+     */
+    public static boolean isLogStart(CharSequence s) {
+        int i = skipDigits(s, 0, s.length());
+        if(i == 0 || i >= s.length() || s.charAt(i) != ':') {
+            return false;
+        }
+        int j = skipDigits(s, i + 1, s.length());
+        return j > i + 1 && j + 1 < s.length() && s.charAt(j) == ':' && s.charAt(j + 1) == ':';
+    }
+
+    /**
+     * This method parses the first line of a log and stores its fields in the parser.
+     * @param s first line of a log
+     * @throws ParseException In case the line is not in the format of a log
+     */
+    public void parse(CharSequence s) throws ParseException {
+        int length = s.length();
+        int firstSplit = skipDigits(s, 0, length);
+        if(firstSplit == 0 || firstSplit >= length || s.charAt(firstSplit) != ':') {
+            throw new ParseException("Invalid process id : " + s, firstSplit);
+        }
+        int secondSplit = skipDigits(s, firstSplit + 1, length);
+        if(secondSplit == firstSplit + 1 || secondSplit + 1 >= length || s.charAt(secondSplit) != ':'
+                || s.charAt(secondSplit + 1) != ':') {
+            throw new ParseException("Invalid thread id : " + s, secondSplit);
+        }
+        processId = (int) parseNumber(s, 0, firstSplit);
+        threadId = parseNumber(s, firstSplit + 1, secondSplit);
+
+        threadNameStart = secondSplit + 2;
+        int firstSpace = threadNameStart;
+        while(firstSpace < length && s.charAt(firstSpace) != ' ') {
+            firstSpace++;
+        }
+        threadNameEnd = firstSpace;
+
+        //The timestamp ends at the '-' after the time
+        int timeStart = firstSpace + 1;
+        int lastSplit = timeStart + 19;
+        while(lastSplit < length && s.charAt(lastSplit) != '-') {
+            lastSplit++;
+        }
+        if(lastSplit >= length) {
+            throw new ParseException("Missing log statement : " + s, lastSplit);
+        }
+        int timeEnd = lastSplit;
+        while(timeEnd > timeStart && s.charAt(timeEnd - 1) == ' ') {
+            timeEnd--;
+        }
+        timestamp = parseTimestamp(s, timeStart, timeEnd);
+
+        statementStart = lastSplit + 1;
+        statementEnd = length;
+        while(statementStart < statementEnd && s.charAt(statementStart) <= ' ') {
+            statementStart++;
+        }
+        while(statementEnd > statementStart && s.charAt(statementEnd - 1) <= ' ') {
+            statementEnd--;
+        }
+    }
+
+    /**
+     * This method checks if the log statement of the last parsed log is equal to the given text, without creating a
+     * String of the log statement.
+     * @param s the parsed line
+     * @param text text to compare the log statement with
+     * @return true if the log statement is the text
+     */
+    public boolean statementEquals(CharSequence s, String text) {
+        if(statementEnd - statementStart != text.length()) {
+            return false;
+        }
+        for(int i = 0; i < text.length(); i++) {
+            if(s.charAt(statementStart + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This method parses a timestamp of the layout "yyyy-MM-dd HH:mm:ss,SSS" into milliseconds.
+     * @param s text containing the timestamp
+     * @return milliseconds of the timestamp
+     * @throws ParseException In case the text is not in the layout of the timestamp
+     */
+    public static long parseTimestamp(CharSequence s) throws ParseException {
+        return parseTimestamp(s, 0, s.length());
+    }
+
+    /**
+     * This method parses a timestamp of the layout "yyyy-MM-dd HH:mm:ss,SSS" in s[from, to) into milliseconds.
+     * @param s text containing the timestamp
+     * @param from offset of the first character of the timestamp
+     * @param to offset after the last character of the timestamp
+     * @return milliseconds of the timestamp
+     * @throws ParseException In case the text is not in the layout of the timestamp
+     */
+    public static long parseTimestamp(CharSequence s, int from, int to) throws ParseException {
+        if(to - from < 19 || s.charAt(from + 4) != '-' || s.charAt(from + 7) != '-' || s.charAt(from + 10) != ' '
+                || s.charAt(from + 13) != ':' || s.charAt(from + 16) != ':') {
+            throw new ParseException("Invalid timestamp : " + s.subSequence(from, to), from);
+        }
+        int year = digits(s, from, 4);
+        int month = digits(s, from + 5, 2);
+        int day = digits(s, from + 8, 2);
+        int hour = digits(s, from + 11, 2);
+        int minute = digits(s, from + 14, 2);
+        int second = digits(s, from + 17, 2);
+        int millis = 0;
+        if(to - from > 19) {
+            char split = s.charAt(from + 19);
+            if(split != ',' && split != '.') {
+                throw new ParseException("Invalid timestamp : " + s.subSequence(from, to), from + 19);
+            }
+            //Fraction of the second, only the first 3 digits are kept
+            int scale = 100;
+            for(int i = from + 20; i < to; i++) {
+                char c = s.charAt(i);
+                if(c < '0' || c > '9') {
+                    throw new ParseException("Invalid timestamp : " + s.subSequence(from, to), i);
+                }
+                millis += (c - '0') * scale;
+                scale /= 10;
+            }
+        }
+        if(year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 59
+                || millis < 0) {
+            throw new ParseException("Invalid timestamp : " + s.subSequence(from, to), from);
+        }
+        return toMillis(year, month, day, hour, minute, second, millis);
+    }
+
+    /**
+     * This method returns the milliseconds for the given date and time.
+     */
+    public static long toMillis(int year, int month, int day, int hour, int minute, int second, int millis) {
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60L + second) * 1000L + millis;
+    }
+
+    /**
+     * This method formats the milliseconds in the same layout as java.sql.Timestamp.toString(), for example
+     * "2020-08-09 18:59:25.2" for 200 milliseconds. This is the layout of the timestamps in the sanitized logs.
+     * @param sb StringBuilder the timestamp is appended to
+     * @param millis milliseconds of the timestamp
+     */
+    public static void appendTimestamp(StringBuilder sb, long millis) {
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        int millisOfDay = (int) Math.floorMod(millis, MILLIS_PER_DAY);
+        //Civil date from the days since 1970-01-01
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        pad(sb, year, 4).append('-');
+        pad(sb, month, 2).append('-');
+        pad(sb, day, 2).append(' ');
+        pad(sb, millisOfDay / 3600000, 2).append(':');
+        pad(sb, millisOfDay / 60000 % 60, 2).append(':');
+        pad(sb, millisOfDay / 1000 % 60, 2).append('.');
+        int fraction = millisOfDay % 1000;
+        if(fraction == 0) {
+            sb.append('0');
+        }
+        else {
+            //Trailing zeros of the fraction are not written
+            int digits = 3;
+            while(fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            pad(sb, fraction, digits);
+        }
+    }
+
+    /**
+     * This method formats the milliseconds in the same layout as java.sql.Timestamp.toString().
+     * @param millis milliseconds of the timestamp
+     * @return formatted timestamp
+     */
+    public static String formatTimestamp(long millis) {
+        StringBuilder sb = new StringBuilder(23);
+        appendTimestamp(sb, millis);
+        return sb.toString();
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static StringBuilder pad(StringBuilder sb, int value, int width) {
+        for(int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if(value < limit) {
+                sb.append('0');
+            }
+        }
+        return sb.append(value);
+    }
+
+    private static int skipDigits(CharSequence s, int from, int to) {
+        while(from < to && s.charAt(from) >= '0' && s.charAt(from) <= '9') {
+            from++;
+        }
+        return from;
+    }
+
+    private static long parseNumber(CharSequence s, int from, int to) {
+        long value = 0;
+        for(int i = from; i < to; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int digits(CharSequence s, int from, int count) throws ParseException {
+        int value = 0;
+        for(int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if(c < '0' || c > '9') {
+                throw new ParseException("Invalid timestamp : " + s, i);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
@@ -0,0 +1,21 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * LogSource interface provides the logs of a single Log file one by one, in the order they are written in the file.
+ * A log statement can contain breaks, so a log returned by the source is the first line of the log together with all
+ * the lines after it which do not begin with "pid:tid::".
+ */
+public interface LogSource extends Closeable {
+
+    /**
+     * Reads the next log of the file
+     * @return the next log, or null if there are no more logs in the file
+     * @throws IOException
+     * @throws ParseException
+     */
+    LogLine next() throws IOException, ParseException;
+}
@@ -0,0 +1,265 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * LogWriterPool class keeps the sanitized thread/user-request files open while the logs are being merged, instead of
+ * opening and closing a file for every single log. The logs of each thread are batched in memory and appended to the
+ * thread's file once the batch is large enough, or when the pool has not been flushed for a while.
+ * The batches hold the encoded bytes of the logs. A log read by the MappedLogSource is copied from the bytes of the
+ * Log file as it is, only its timestamp is written again.
+ * At the most maxOpenWriters files are kept open at a time, the least recently used writer is closed when a new one is
+ * needed.
+ * Once the batches are flushed, the batch of every thread without an open writer is dropped along with the mark of its
+ * first log, and the batches of the open writers are shrunk back to the batch size. The memory of the pool is bounded
+ * by the open writers and the threads written since the last flush, not by every thread it has seen, so a long run
+ * of the follow mode doesn't keep a batch for every thread of the logs.
+ * The bytes written, the open writers and the latency of the flushes are added to the PipelineMetrics.
+ * Subclasses can write the batches somewhere else than a file per thread, by overriding hasLogs, writeBatch,
+ * flushWriters and closeWriters.
+ */
+public class LogWriterPool implements SanitizedLogWriter {
+
+    private final String folderPath;
+    private final int maxOpenWriters;
+    private final int batchSize;
+    private final int maxBufferedBytes;
+    private final long flushIntervalMillis;
+
+    /**
+     * Open writers in the access order, so the first entry is always the least recently used one.
+     */
+    private final LinkedHashMap<Long, OutputStream> writers = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Long, ByteBatch> batches = new HashMap<>();
+    /**
+     * Threads for which at least a single log has been written since their batch was created, so the next log has to
+     * begin on a new line.
+     */
+    private final LongHashSet startedThreads = new LongHashSet();
+    private final StringBuilder timestamp = new StringBuilder();
+    private int bufferedBytes = 0;
+    private int writesSinceClockCheck = 0;
+    /**
+     * Bytes batched since the last flush, added to the PipelineMetrics on every flush
+     */
+    private long batchedBytes = 0;
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * Creates a pool with the default limits of 128 open writers, 8K bytes per thread batch, 4M bytes buffered in
+     * total and a flush every second.
+     * @param folderPath folder where the thread/user-request files are written
+     */
+    public LogWriterPool(String folderPath) {
+        this(folderPath, 128, 8192, 4 * 1024 * 1024, 1000);
+    }
+
+    /**
+     * @param folderPath folder where the thread/user-request files are written
+     * @param maxOpenWriters maximum number of files kept open at a time
+     * @param batchSize number of bytes batched for a thread before they are appended to its file
+     * @param maxBufferedBytes number of bytes batched over all the threads before every batch is flushed
+     * @param flushIntervalMillis maximum time a log can stay batched in memory
+     */
+    public LogWriterPool(String folderPath, int maxOpenWriters, int batchSize, int maxBufferedBytes,
+                         long flushIntervalMillis) {
+        this.folderPath = folderPath;
+        this.maxOpenWriters = Math.max(1, maxOpenWriters);
+        this.batchSize = batchSize;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * Adds a single log to the batch of its thread. Every log except the first log of a file begins on a new line,
+     * which is the same layout as appending the logs to the file one by one.
+     * @param threadId thread/user-request the log belongs to
+     * @param log the log to be written
+     * @throws IOException
+     */
+    public void write(long threadId, String log) throws IOException {
+        ByteBatch batch = startLog(threadId);
+        int before = batch.length();
+        //Same encoding as a FileWriter
+        byte[] bytes = log.getBytes();
+        batch.append(bytes, 0, bytes.length);
+        endLog(threadId, batch, before);
+    }
+
+    /**
+     * Adds a single log to the batch of its thread. For a log read by the MappedLogSource, the header, log statement
+     * and its breaks are copied from the mapped Log file and the timestamp is written in the layout of the sanitized
+     * logs.
+     * @param log the log to be written
+     * @throws IOException
+     */
+    @Override
+    public void write(LogLine log) throws IOException {
+        long threadId = log.getThreadId();
+        if(!log.hasRawLog()) {
+            write(threadId, log.getLog());
+            return;
+        }
+        ByteBatch batch = startLog(threadId);
+        int before = batch.length();
+        batch.append(log.rawBuffer, log.rawStart, log.rawTimestampStart);
+        timestamp.setLength(0);
+        LogParser.appendTimestamp(timestamp, log.getTimestamp());
+        timestamp.append(" - ");
+        batch.appendAscii(timestamp);
+        batch.append(log.rawBuffer, log.rawStatementStart, log.rawStatementEnd);
+        batch.append(log.rawBuffer, log.rawLineEnd, log.rawEnd);
+        endLog(threadId, batch, before);
+    }
+
+    /**
+     * Appends all the batched logs to their files and flushes the open writers.
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        long begin = System.nanoTime();
+        for(Map.Entry<Long, ByteBatch> entry : batches.entrySet()) {
+            if(entry.getValue().length() != 0) {
+                flushBatch(entry.getKey(), entry.getValue());
+            }
+        }
+        flushWriters();
+        Iterator<Map.Entry<Long, ByteBatch>> iterator = batches.entrySet().iterator();
+        while(iterator.hasNext()) {
+            Map.Entry<Long, ByteBatch> entry = iterator.next();
+            if(!writers.containsKey(entry.getKey())) {
+                //The next log of the thread finds out from its file whether it begins on a new line
+                iterator.remove();
+                startedThreads.remove(entry.getKey());
+            }
+            else {
+                entry.getValue().shrink(batchSize);
+            }
+        }
+        lastFlush = System.currentTimeMillis();
+        writesSinceClockCheck = 0;
+        PipelineMetrics.bytesWritten(batchedBytes);
+        batchedBytes = 0;
+        PipelineMetrics.flushed(System.nanoTime() - begin);
+    }
+
+    /**
+     * Flushes all the batched logs and closes every open writer.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        closeWriters();
+        batches.clear();
+    }
+
+    /**
+     * Returns the batch of the thread, with the new line separating the log from the previous log of the file.
+     */
+    private ByteBatch startLog(long threadId) {
+        ByteBatch batch = batches.get(threadId);
+        if(batch == null) {
+            batch = new ByteBatch();
+            batches.put(threadId, batch);
+        }
+        if(startedThreads.contains(threadId)) {
+            batch.append((byte) '\n');
+        }
+        else {
+            //The file may already contain logs from a previous run
+            startedThreads.add(threadId);
+            if(hasLogs(threadId)) {
+                batch.append((byte) '\n');
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Flushes the batch of the thread if it is large enough, or all the batches if they hold too many bytes or have
+     * not been flushed for a while.
+     */
+    private void endLog(long threadId, ByteBatch batch, int before) throws IOException {
+        bufferedBytes += batch.length() - before;
+        batchedBytes += batch.length() - before;
+        if(batch.length() >= batchSize) {
+            flushBatch(threadId, batch);
+        }
+        if(bufferedBytes >= maxBufferedBytes) {
+            flush();
+        }
+        else if(++writesSinceClockCheck >= 1024) {
+            writesSinceClockCheck = 0;
+            if(System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+                flush();
+            }
+        }
+    }
+
+    private void flushBatch(long threadId, ByteBatch batch) throws IOException {
+        writeBatch(threadId, batch);
+        bufferedBytes -= batch.length();
+        batch.reset();
+    }
+
+    /**
+     * Checks if logs of the thread were written before this pool was created
+     * @param threadId thread/user-request id
+     * @return true if the file of the thread is not empty
+     */
+    protected boolean hasLogs(long threadId) {
+        return getFile(threadId).length() != 0;
+    }
+
+    /**
+     * Appends the batch of a thread to its file, opening the file if it is not open yet.
+     * @param threadId thread/user-request the batch belongs to
+     * @param batch batched logs of the thread
+     * @throws IOException
+     */
+    protected void writeBatch(long threadId, ByteBatch batch) throws IOException {
+        OutputStream writer = writers.get(threadId);
+        if(writer == null) {
+            if(writers.size() >= maxOpenWriters) {
+                //Close the least recently used writer
+                Iterator<OutputStream> eldest = writers.values().iterator();
+                OutputStream evicted = eldest.next();
+                eldest.remove();
+                evicted.close();
+                PipelineMetrics.writersClosed(1);
+            }
+            writer = new BufferedOutputStream(new FileOutputStream(getFile(threadId), true));
+            writers.put(threadId, writer);
+            PipelineMetrics.writerOpened();
+        }
+        batch.writeTo(writer);
+    }
+
+    /**
+     * Flushes the open writers
+     * @throws IOException
+     */
+    protected void flushWriters() throws IOException {
+        for(OutputStream writer : writers.values()) {
+            writer.flush();
+        }
+    }
+
+    /**
+     * Closes the open writers
+     * @throws IOException
+     */
+    protected void closeWriters() throws IOException {
+        for(OutputStream writer : writers.values()) {
+            writer.close();
+        }
+        PipelineMetrics.writersClosed(writers.size());
+        writers.clear();
+    }
+
+    private File getFile(long threadId) {
+        return new File(folderPath + "/" + threadId + ".log");
+    }
+}
@@ -0,0 +1,169 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.util.Arrays;
+
+/**
+ * LongHashSet class is a set of primitive longs with open addressing, so adding an id does not box it.
+ */
+public class LongHashSet {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int size = 0;
+    private boolean containsEmpty = false;
+
+    public LongHashSet() {
+        keys = new long[16];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Adds the value to the set
+     * @param value value to be added
+     * @return true if the value was not in the set
+     */
+    public boolean add(long value) {
+        if(value == EMPTY) {
+            if(containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = hash(value) & mask;
+        while(keys[i] != EMPTY) {
+            if(keys[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = value;
+        size++;
+        if(size * 2 > keys.length) {
+            resize();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the value is in the set
+     * @param value value to be checked
+     * @return true if the value is in the set
+     */
+    public boolean contains(long value) {
+        if(value == EMPTY) {
+            return containsEmpty;
+        }
+        int mask = keys.length - 1;
+        int i = hash(value) & mask;
+        while(keys[i] != EMPTY) {
+            if(keys[i] == value) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the value from the set. The values after it in the same probe sequence are shifted back, so no
+     * tombstones are left behind.
+     * @param value value to be removed
+     * @return true if the value was in the set
+     */
+    public boolean remove(long value) {
+        if(value == EMPTY) {
+            if(!containsEmpty) {
+                return false;
+            }
+            containsEmpty = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int i = hash(value) & mask;
+        while(keys[i] != value) {
+            if(keys[i] == EMPTY) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(keys[j] == EMPTY) {
+                break;
+            }
+            //A value can be moved back to i only if i is in between its home slot and j
+            int home = hash(keys[j]) & mask;
+            if(((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Getter for the number of values in the set
+     * @return size of the set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the values of the set into an array
+     * @return values in no particular order
+     */
+    public long[] toArray() {
+        long[] values = new long[size];
+        int i = 0;
+        if(containsEmpty) {
+            values[i++] = EMPTY;
+        }
+        for(long key : keys) {
+            if(key != EMPTY) {
+                values[i++] = key;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Removes all the values, the capacity of the set is kept.
+     */
+    public void clear() {
+        if(size != 0) {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            containsEmpty = false;
+        }
+    }
+
+    private void resize() {
+        long[] old = keys;
+        keys = new long[old.length * 2];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for(long key : old) {
+            if(key != EMPTY) {
+                int i = hash(key) & mask;
+                while(keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = key;
+            }
+        }
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
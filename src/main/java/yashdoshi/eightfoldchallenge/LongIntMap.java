@@ -0,0 +1,125 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.util.Arrays;
+
+/**
+ * LongIntMap class maps primitive longs to primitive ints with open addressing, so neither the keys nor the values are
+ * boxed. Values can only be added or replaced, which is all the interning of the IntervalStore needs.
+ */
+public class LongIntMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    public static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+    private int emptyValue = MISSING;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize number of keys the map holds without resizing
+     */
+    public LongIntMap(int expectedSize) {
+        int capacity = 16;
+        while(capacity < expectedSize * 2) {
+            capacity *= 2;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Returns the value of the key
+     * @param key key to be looked up
+     * @return value of the key, MISSING if the key is not in the map
+     */
+    public int get(long key) {
+        if(key == EMPTY) {
+            return emptyValue;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while(keys[i] != EMPTY) {
+            if(keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Sets the value of the key
+     * @param key key to be set
+     * @param value value of the key, not MISSING
+     */
+    public void put(long key, int value) {
+        if(key == EMPTY) {
+            if(emptyValue == MISSING) {
+                size++;
+            }
+            emptyValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while(keys[i] != EMPTY) {
+            if(keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        if(size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    /**
+     * Getter for the number of keys in the map
+     * @return size of the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Getter for the memory taken by the arrays of the map
+     * @return bytes of the keys and values
+     */
+    public long getMemoryBytes() {
+        return 16 + 8L * keys.length + 16 + 4L * values.length;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        int mask = keys.length - 1;
+        for(int j = 0; j < oldKeys.length; j++) {
+            if(oldKeys[j] != EMPTY) {
+                int i = hash(oldKeys[j]) & mask;
+                while(keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
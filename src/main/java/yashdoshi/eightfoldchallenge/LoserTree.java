@@ -0,0 +1,133 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * LoserTree class merges the logs of k LogSources in the order of their timestamps. It is a tournament tree over the
+ * sources: every internal node keeps the source which lost the match at that node, and the winner of the whole tree
+ * is the source with the earliest log. Once the log of the winner is polled, only the matches on the path from its
+ * leaf to the root are played again, which takes log k comparisons of primitive timestamps and no allocation.
+ * Logs with the same timestamp are returned in the order of their sources, and an exhausted source loses every match.
+ */
+public class LoserTree {
+
+    private final LogSource[] sources;
+    /**
+     * Next log of every source, null once the source is exhausted
+     */
+    private final LogLine[] heads;
+    private final long[] timestamps;
+    /**
+     * tree[0] is the winner, tree[1..k-1] are the losers of the internal nodes. The leaf of source i is the node k + i
+     * and the parent of node n is n / 2.
+     */
+    private final int[] tree;
+    private final int k;
+    private int liveSources;
+    /**
+     * Time taken by the sources to read and parse their logs
+     */
+    private long parseNanos;
+
+    /**
+     * Reads the first log of every source and plays the whole tournament
+     * @param sources sources to be merged
+     * @throws IOException
+     * @throws ParseException
+     */
+    public LoserTree(LogSource[] sources) throws IOException, ParseException {
+        this.sources = sources;
+        this.k = sources.length;
+        this.heads = new LogLine[k];
+        this.timestamps = new long[k];
+        this.tree = new int[Math.max(1, k)];
+        for(int i = 0; i < k; i++) {
+            read(i);
+        }
+        if(k > 0) {
+            int[] winners = new int[2 * k];
+            for(int i = 0; i < k; i++) {
+                winners[k + i] = i;
+            }
+            for(int node = k - 1; node >= 1; node--) {
+                int a = winners[2 * node];
+                int b = winners[2 * node + 1];
+                boolean aWins = beats(a, b);
+                winners[node] = aWins ? a : b;
+                tree[node] = aWins ? b : a;
+            }
+            tree[0] = k == 1 ? 0 : winners[1];
+        }
+    }
+
+    /**
+     * This method returns the earliest log of all the sources and reads the next log of its source.
+     * @return earliest log, or null once all the sources are exhausted
+     * @throws IOException
+     * @throws ParseException
+     */
+    public LogLine poll() throws IOException, ParseException {
+        if(k == 0) {
+            return null;
+        }
+        int winner = tree[0];
+        LogLine log = heads[winner];
+        if(log == null) {
+            return null;
+        }
+        read(winner);
+        for(int node = (k + winner) / 2; node >= 1; node /= 2) {
+            if(beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+        return log;
+    }
+
+    private void read(int source) throws IOException, ParseException {
+        long begin = System.nanoTime();
+        LogLine log = sources[source].next();
+        parseNanos += System.nanoTime() - begin;
+        if(log != null && heads[source] == null) {
+            liveSources++;
+        }
+        else if(log == null && heads[source] != null) {
+            liveSources--;
+        }
+        heads[source] = log;
+        timestamps[source] = log == null ? Long.MAX_VALUE : log.getTimestamp();
+    }
+
+    /**
+     * Getter for the number of sources which still have logs
+     * @return number of sources which are not exhausted
+     */
+    public int getLiveSources() {
+        return liveSources;
+    }
+
+    /**
+     * Getter for the time taken by the sources to read and parse the logs so far
+     * @return time in nanoseconds
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * Checks if the head of source a comes before the head of source b
+     */
+    private boolean beats(int a, int b) {
+        if(heads[b] == null) {
+            return heads[a] != null || a < b;
+        }
+        if(heads[a] == null) {
+            return false;
+        }
+        return timestamps[a] < timestamps[b] || (timestamps[a] == timestamps[b] && a < b);
+    }
+}
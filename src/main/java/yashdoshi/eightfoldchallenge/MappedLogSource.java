@@ -0,0 +1,193 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.ParseException;
+
+/**
+ * MappedLogSource class reads the logs of a Log file from memory mapped windows of the file. The new lines and the
+ * "pid:tid::" at the beginning of every log are found by scanning the bytes in place, and only the ASCII header of a
+ * log is parsed. The thread name and log statement are not decoded, the log keeps the offsets of its bytes so they can
+ * be copied to the sanitized file as they are.
+ * Files larger than a window are mapped one window at a time, a window always begins at the first byte of a log.
+ * Lines are expected to end with '\n'.
+ * The follow mode reads only a range of a file which is still being written. The last log of the range may then still
+ * get more breaks in its log statement, so it can be held back until the next log is written after it.
+ */
+public class MappedLogSource implements LogSource {
+
+    private static final int WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    /**
+     * Position in the file after the last byte which is read
+     */
+    private final long fileSize;
+    private final boolean holdLastLog;
+    private final int fileId;
+    private final int windowSize;
+    private final LogParser parser = new LogParser();
+    private final ByteSequence line = new ByteSequence();
+
+    private MappedByteBuffer buffer;
+    /**
+     * Position of the first byte of the mapped window in the file
+     */
+    private long windowOffset = 0;
+    /**
+     * Position of the next unread byte in the window
+     */
+    private int position = 0;
+
+    /**
+     * @param f Log file
+     * @param fileId Id of the Log file, stored in every log read from it
+     * @throws IOException
+     */
+    public MappedLogSource(File f, int fileId) throws IOException {
+        this(f, fileId, WINDOW_SIZE);
+    }
+
+    /**
+     * @param f Log file
+     * @param fileId Id of the Log file, stored in every log read from it
+     * @param windowSize number of bytes mapped at a time
+     * @throws IOException
+     */
+    public MappedLogSource(File f, int fileId, int windowSize) throws IOException {
+        this(f, fileId, windowSize, 0, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * Creates a source for the logs in between the offsets from and to of the file.
+     * @param f Log file
+     * @param fileId Id of the Log file, stored in every log read from it
+     * @param windowSize number of bytes mapped at a time
+     * @param from position of the first byte of a log in the file
+     * @param to position after the last byte to be read, it is limited to the size of the file
+     * @param holdLastLog true if the last log of the range is not returned, as it may not be complete yet
+     * @throws IOException
+     */
+    public MappedLogSource(File f, int fileId, int windowSize, long from, long to, boolean holdLastLog)
+            throws IOException {
+        this.file = new RandomAccessFile(f, "r");
+        this.channel = file.getChannel();
+        this.fileSize = Math.min(to, channel.size());
+        this.fileId = fileId;
+        this.windowSize = windowSize;
+        this.holdLastLog = holdLastLog;
+        map(Math.min(from, fileSize), windowSize);
+    }
+
+    /**
+     * Getter for the position in the file of the first log which has not been returned yet
+     * @return position in the file
+     */
+    public long getFilePosition() {
+        return windowOffset + position;
+    }
+
+    @Override
+    public LogLine next() throws IOException, ParseException {
+        while(true) {
+            int limit = buffer.limit();
+            //Lines before the first log of the file don't belong to any log
+            while(position < limit) {
+                int end = lineEnd(position);
+                if(end < 0 || isLogStart(position, end)) {
+                    break;
+                }
+                position = end + 1;
+            }
+            if(position >= limit && isLastWindow()) {
+                return null;
+            }
+            LogLine log = readLog(position);
+            if(log != null) {
+                return log;
+            }
+            if(isLastWindow()) {
+                //The last log is held back
+                return null;
+            }
+            //The log doesn't end in this window, map a window beginning at the log
+            map(windowOffset + position, Math.max(windowSize, 2L * (limit - position)));
+        }
+    }
+
+    /**
+     * This method reads the log beginning at the offset start of the window, together with the breaks of its log
+     * statement.
+     * @param start offset of the first byte of the log in the window
+     * @return the log, or null if the log doesn't end in this window
+     * @throws ParseException
+     */
+    private LogLine readLog(int start) throws ParseException {
+        int lineEnd = lineEnd(start);
+        //A line which doesn't end with '\n' may still be written in the follow mode
+        if(lineEnd < 0 || (holdLastLog && lineEnd >= buffer.limit())) {
+            return null;
+        }
+        parser.parse(line.wrap(buffer, start, lineEnd));
+        int end = lineEnd;
+        int limit = buffer.limit();
+        while(true) {
+            if(end + 1 >= limit) {
+                //The next line may still be a break of this log statement
+                if(!isLastWindow() || holdLastLog) {
+                    return null;
+                }
+                break;
+            }
+            int next = lineEnd(end + 1);
+            if(next < 0) {
+                return null;
+            }
+            if(isLogStart(end + 1, next)) {
+                break;
+            }
+            end = next;
+        }
+        position = Math.min(end + 1, limit);
+        return new LogLine(parser.processId, parser.threadId, parser.timestamp, fileId, buffer, start,
+                start + parser.threadNameStart, start + parser.threadNameEnd + 1, start + parser.statementStart,
+                start + parser.statementEnd, lineEnd, end);
+    }
+
+    /**
+     * Finds the end of the line beginning at the offset from. The end of the last line of the file is the end of the
+     * file.
+     * @return offset of the '\n' ending the line, or -1 if the line continues after this window
+     */
+    private int lineEnd(int from) {
+        int limit = buffer.limit();
+        for(int i = from; i < limit; i++) {
+            if(buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return isLastWindow() ? limit : -1;
+    }
+
+    private boolean isLogStart(int from, int to) {
+        return LogParser.isLogStart(line.wrap(buffer, from, to));
+    }
+
+    private boolean isLastWindow() {
+        return windowOffset + buffer.limit() >= fileSize;
+    }
+
+    private void map(long offset, long size) throws IOException {
+        windowOffset = offset;
+        position = 0;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                Math.min(Integer.MAX_VALUE, Math.min(size, fileSize - offset)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,293 @@
+package yashdoshi.eightfoldchallenge;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * PipelineMetrics class counts the work done by every step of the sanitization and by the queries, so a slow run shows
+ * whether the parsing of the Log files, the merge of the logs or the writing of the sanitized files takes the time.
+ * The merge adds its counters in bulk every few thousand logs, the writer pools when they are flushed, so the counters
+ * cost a few nanoseconds per log. The latencies of the flushes and of the queries are kept in QuantileSketches.
+ * The metrics are read over JMX once register is called, and a progress line can be printed periodically.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    public static final String OBJECT_NAME = "yashdoshi.eightfoldchallenge:type=PipelineMetrics";
+
+    private static final PipelineMetrics instance = new PipelineMetrics();
+    private static boolean registered = false;
+    private static Thread progress;
+
+    private static volatile long startNanos = System.nanoTime();
+    private static final LongAdder filesOpened = new LongAdder();
+    private static final LongAdder logsMerged = new LongAdder();
+    private static final LongAdder bytesWritten = new LongAdder();
+    private static final LongAdder parseNanos = new LongAdder();
+    private static final LongAdder pollNanos = new LongAdder();
+    private static final LongAdder writeNanos = new LongAdder();
+    private static final AtomicInteger liveSources = new AtomicInteger();
+    private static final AtomicInteger openWriters = new AtomicInteger();
+    /**
+     * Latencies in microseconds, a sketch is only read and written while holding its lock
+     */
+    private static final QuantileSketch flushLatency = new QuantileSketch();
+    private static final QuantileSketch queryLatency = new QuantileSketch();
+
+    /**
+     * This method registers the metrics on the platform MBeanServer, once per JVM.
+     */
+    public static synchronized void register() {
+        if(registered) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+            registered = true;
+        } catch (JMException e) {
+            System.out.println("Metrics could not be registered over JMX : " + e.getMessage());
+        }
+    }
+
+    /**
+     * This method resets the metrics before the Log files are sanitized, the rates are measured from now on.
+     */
+    public static void start() {
+        instance.reset();
+    }
+
+    /**
+     * This method starts a daemon thread printing the progress line every few seconds, until stopProgress is called.
+     * @param seconds time in between two progress lines
+     */
+    public static synchronized void startProgress(long seconds) {
+        stopProgress();
+        progress = new Thread(() -> {
+            try {
+                while(true) {
+                    Thread.sleep(seconds * 1000);
+                    System.out.println(getProgress());
+                }
+            } catch (InterruptedException e) {
+                //Stopped
+            }
+        }, "metrics-progress");
+        progress.setDaemon(true);
+        progress.start();
+    }
+
+    /**
+     * Stops the progress line
+     */
+    public static synchronized void stopProgress() {
+        if(progress != null) {
+            progress.interrupt();
+            progress = null;
+        }
+    }
+
+    /**
+     * This method returns the progress of the sanitization since the last start.
+     * @return logs and bytes with their rates, time per log of every step, live sources and open writers
+     */
+    public static String getProgress() {
+        return String.format(Locale.ROOT, "Progress : %d logs (%.0f logs/s), %.1f MB written (%.1f MB/s),"
+                        + " parse %.0f ns/log, merge %.0f ns/log, write %.0f ns/log, %d sources live,"
+                        + " %d writers open, flush p99 %.0f us", instance.getLogsMerged(),
+                instance.getLogsPerSecond(), bytesWritten.sum() / (1024.0 * 1024.0),
+                instance.getBytesPerSecond() / (1024.0 * 1024.0), instance.getParseNanosPerLog(),
+                instance.getMergeNanosPerLog(), instance.getWriteNanosPerLog(), liveSources.get(),
+                openWriters.get(), instance.getFlushLatencyP99Micros());
+    }
+
+    /**
+     * This method returns the latency of the queries.
+     * @return number of queries and the percentiles of their latency
+     */
+    public static String getQuerySummary() {
+        return String.format(Locale.ROOT, "Queries : %d, latency p50 %.0f us, p95 %.0f us, p99 %.0f us",
+                instance.getQueries(), instance.getQueryLatencyP50Micros(), instance.getQueryLatencyP95Micros(),
+                instance.getQueryLatencyP99Micros());
+    }
+
+    static void fileOpened() {
+        filesOpened.increment();
+    }
+
+    /**
+     * Adds the counters of a part of the merge
+     * @param logs number of logs merged
+     * @param parse time taken to read and parse the logs from their sources
+     * @param poll time taken to poll the logs from the LoserTree, parsing included
+     * @param write time taken by the listeners and the writer
+     * @param sources number of sources which still have logs
+     */
+    static void logsMerged(long logs, long parse, long poll, long write, int sources) {
+        logsMerged.add(logs);
+        parseNanos.add(parse);
+        pollNanos.add(poll);
+        writeNanos.add(write);
+        liveSources.set(sources);
+    }
+
+    static void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    static void writerOpened() {
+        openWriters.incrementAndGet();
+    }
+
+    static void writersClosed(int writers) {
+        openWriters.addAndGet(-writers);
+    }
+
+    static void flushed(long nanos) {
+        synchronized(flushLatency) {
+            flushLatency.add(nanos / 1000.0);
+        }
+    }
+
+    static void queryAnswered(long nanos) {
+        synchronized(queryLatency) {
+            queryLatency.add(nanos / 1000.0);
+        }
+    }
+
+    private static double perLog(LongAdder nanos) {
+        long logs = logsMerged.sum();
+        return logs == 0 ? 0 : (double) nanos.sum() / logs;
+    }
+
+    private static double quantile(QuantileSketch sketch, double q) {
+        synchronized(sketch) {
+            return sketch.getCount() == 0 ? 0 : sketch.quantile(q);
+        }
+    }
+
+    private static double getElapsedSeconds() {
+        return Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+    }
+
+    @Override
+    public long getFilesOpened() {
+        return filesOpened.sum();
+    }
+
+    @Override
+    public long getLogsMerged() {
+        return logsMerged.sum();
+    }
+
+    @Override
+    public double getLogsPerSecond() {
+        return logsMerged.sum() / getElapsedSeconds();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public double getBytesPerSecond() {
+        return bytesWritten.sum() / getElapsedSeconds();
+    }
+
+    @Override
+    public double getParseNanosPerLog() {
+        return perLog(parseNanos);
+    }
+
+    /**
+     * The time spent in the LoserTree itself, the parsing of the sources is left out
+     */
+    @Override
+    public double getMergeNanosPerLog() {
+        long logs = logsMerged.sum();
+        return logs == 0 ? 0 : (double) Math.max(0, pollNanos.sum() - parseNanos.sum()) / logs;
+    }
+
+    @Override
+    public double getWriteNanosPerLog() {
+        return perLog(writeNanos);
+    }
+
+    @Override
+    public int getLiveSources() {
+        return liveSources.get();
+    }
+
+    @Override
+    public int getOpenWriters() {
+        return openWriters.get();
+    }
+
+    @Override
+    public long getFlushes() {
+        synchronized(flushLatency) {
+            return flushLatency.getCount();
+        }
+    }
+
+    @Override
+    public double getFlushLatencyP50Micros() {
+        return quantile(flushLatency, 0.5);
+    }
+
+    @Override
+    public double getFlushLatencyP99Micros() {
+        return quantile(flushLatency, 0.99);
+    }
+
+    @Override
+    public long getQueries() {
+        synchronized(queryLatency) {
+            return queryLatency.getCount();
+        }
+    }
+
+    @Override
+    public double getQueryLatencyP50Micros() {
+        return quantile(queryLatency, 0.5);
+    }
+
+    @Override
+    public double getQueryLatencyP95Micros() {
+        return quantile(queryLatency, 0.95);
+    }
+
+    @Override
+    public double getQueryLatencyP99Micros() {
+        return quantile(queryLatency, 0.99);
+    }
+
+    @Override
+    public String getQueryCacheStats() {
+        return BasicAPI.getCacheStats();
+    }
+
+    /**
+     * The open writers are a gauge of the pools which are still open, so they are not reset
+     */
+    @Override
+    public void reset() {
+        startNanos = System.nanoTime();
+        filesOpened.reset();
+        logsMerged.reset();
+        bytesWritten.reset();
+        parseNanos.reset();
+        pollNanos.reset();
+        writeNanos.reset();
+        liveSources.set(0);
+        synchronized(flushLatency) {
+            flushLatency.clear();
+        }
+        synchronized(queryLatency) {
+            queryLatency.clear();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package yashdoshi.eightfoldchallenge;
+
+/**
+ * PipelineMetricsMBean interface lists the metrics of the sanitization and of the queries which are read over JMX,
+ * under the name yashdoshi.eightfoldchallenge:type=PipelineMetrics.
+ */
+public interface PipelineMetricsMBean {
+
+    long getFilesOpened();
+
+    long getLogsMerged();
+
+    double getLogsPerSecond();
+
+    long getBytesWritten();
+
+    double getBytesPerSecond();
+
+    double getParseNanosPerLog();
+
+    double getMergeNanosPerLog();
+
+    double getWriteNanosPerLog();
+
+    int getLiveSources();
+
+    int getOpenWriters();
+
+    long getFlushes();
+
+    double getFlushLatencyP50Micros();
+
+    double getFlushLatencyP99Micros();
+
+    long getQueries();
+
+    double getQueryLatencyP50Micros();
+
+    double getQueryLatencyP95Micros();
+
+    double getQueryLatencyP99Micros();
+
+    String getQueryCacheStats();
+
+    /**
+     * Resets all the counters and histograms
+     */
+    void reset();
+}
@@ -0,0 +1,172 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * QuantileSketch class estimates the quantiles of a stream of positive values without keeping the values. Every value
+ * is counted in a bucket of logarithmic width, so a quantile is returned within the relative accuracy of the sketch
+ * (1% by default). The number of buckets only grows with the log of the range of the values, a few hundred buckets
+ * cover lifetimes from a millisecond to a year.
+ * Two sketches with the same accuracy are merged by adding their buckets, so sketches of shards can be combined.
+ */
+public class QuantileSketch {
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    /**
+     * Counts of the buckets from offset to offset + counts.length - 1, bucket i holds (gamma^(i-1), gamma^i]
+     */
+    private long[] counts = new long[0];
+    private int offset = 0;
+    private long zeroCount = 0;
+    private long count = 0;
+
+    public QuantileSketch() {
+        this(0.01);
+    }
+
+    /**
+     * @param relativeAccuracy relative error of the returned quantiles, in between 0 and 1
+     */
+    public QuantileSketch(double relativeAccuracy) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /**
+     * Adds a value to the sketch, values less than or equal to 0 are counted as 0
+     * @param value value to be added
+     */
+    public void add(double value) {
+        count++;
+        if(value <= 0) {
+            zeroCount++;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(value) / logGamma);
+        grow(bucket, bucket);
+        counts[bucket - offset]++;
+    }
+
+    /**
+     * Adds the values of another sketch to this sketch
+     * @param other sketch with the same relative accuracy
+     */
+    public void merge(QuantileSketch other) {
+        if(other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Sketches of different accuracy cannot be merged");
+        }
+        count += other.count;
+        zeroCount += other.zeroCount;
+        if(other.counts.length == 0) {
+            return;
+        }
+        grow(other.offset, other.offset + other.counts.length - 1);
+        for(int i = 0; i < other.counts.length; i++) {
+            counts[other.offset + i - offset] += other.counts[i];
+        }
+    }
+
+    /**
+     * This method returns the estimated value at the quantile q, the value of rank floor(q * (count - 1)) in ascending
+     * order (the lower quantile). The estimate is the middle of the bucket of that value, so it can be slightly above
+     * the largest value added.
+     * @param q quantile in between 0 and 1, for example 0.95 for the 95th percentile
+     * @return estimated value, NaN if the sketch is empty
+     */
+    public double quantile(double q) {
+        if(count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(q * (count - 1));
+        if(rank < zeroCount) {
+            return 0;
+        }
+        long seen = zeroCount;
+        for(int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if(seen > rank) {
+                //Middle of the bucket in the relative sense
+                return 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, offset + counts.length - 1) / (gamma + 1);
+    }
+
+    /**
+     * Getter for the number of values
+     * @return number of values added to the sketch
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Removes all the values of the sketch
+     */
+    public void clear() {
+        counts = new long[0];
+        offset = 0;
+        zeroCount = 0;
+        count = 0;
+    }
+
+    /**
+     * This method writes the sketch, so a sketch of a shard can be sent to be merged elsewhere.
+     * @param out output the sketch is written to
+     * @throws IOException
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(relativeAccuracy);
+        out.writeLong(count);
+        out.writeLong(zeroCount);
+        out.writeInt(offset);
+        out.writeInt(counts.length);
+        for(long bucket : counts) {
+            out.writeLong(bucket);
+        }
+    }
+
+    /**
+     * This method reads a sketch written by write.
+     * @param in input the sketch is read from
+     * @return the sketch
+     * @throws IOException
+     */
+    public static QuantileSketch read(DataInput in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch(in.readDouble());
+        sketch.count = in.readLong();
+        sketch.zeroCount = in.readLong();
+        sketch.offset = in.readInt();
+        sketch.counts = new long[in.readInt()];
+        for(int i = 0; i < sketch.counts.length; i++) {
+            sketch.counts[i] = in.readLong();
+        }
+        return sketch;
+    }
+
+    /**
+     * Makes the buckets in between from and to available
+     */
+    private void grow(int from, int to) {
+        if(counts.length == 0) {
+            counts = new long[to - from + 1];
+            offset = from;
+            return;
+        }
+        int last = offset + counts.length - 1;
+        if(from >= offset && to <= last) {
+            return;
+        }
+        int newOffset = Math.min(from, offset);
+        int newLast = Math.max(to, last);
+        long[] grown = new long[newLast - newOffset + 1];
+        System.arraycopy(counts, 0, grown, offset - newOffset, counts.length);
+        counts = grown;
+        offset = newOffset;
+    }
+}
@@ -0,0 +1,187 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.util.*;
+
+/**
+ * QueryCache class keeps the active threads of the most recently queried time ranges, so a range which is queried
+ * again is answered without running the query. The ranges are normalized, so (t2, t1) is the same range as (t1, t2).
+ * The cache is bounded on the size of the results, a result weighs a slot for every active thread and every process
+ * it is active on, and the least recently used results are evicted once the cache is over its weight or its number
+ * of ranges.
+ * When the follow mode adds an interval or sets its end time, only the cached ranges whose result can change are
+ * invalidated: the ranges in which the interval is active before the change but not after it, or the other way
+ * round, as per BasicAPI.checkTimeRange. Every ingested interval is checked against all the cached ranges, so the
+ * number of ranges is kept small.
+ */
+public class QueryCache {
+
+    /**
+     * Key of a normalized time range
+     */
+    private static class Range {
+        private final long startTime;
+        private final long endTime;
+
+        private Range(long startTime, long endTime) {
+            this.startTime = Math.min(startTime, endTime);
+            this.endTime = Math.max(startTime, endTime);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Range)) {
+                return false;
+            }
+            Range range = (Range) o;
+            return startTime == range.startTime && endTime == range.endTime;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = startTime * 31 + endTime;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    private final int maxRanges;
+    private final long maxWeight;
+    /**
+     * Results in the access order, the first entry is the least recently used one
+     */
+    private final LinkedHashMap<Range, HashMap<Long, HashSet<Integer>>> results = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<Range, Long> weights = new HashMap<>();
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param maxRanges maximum number of cached ranges
+     * @param maxWeight maximum number of threads and processes over all the cached results
+     */
+    public QueryCache(int maxRanges, long maxWeight) {
+        this.maxRanges = maxRanges;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * This method returns the cached active threads of the range.
+     * @param startTime start of the range
+     * @param endTime end of the range
+     * @return processes of every active thread, which must not be modified, or null if the range is not cached
+     */
+    public synchronized HashMap<Long, HashSet<Integer>> get(long startTime, long endTime) {
+        HashMap<Long, HashSet<Integer>> result = results.get(new Range(startTime, endTime));
+        if(result == null) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * This method caches the active threads of the range and evicts the least recently used results if the cache is
+     * over its weight or its number of ranges. A result heavier than the whole cache is not cached.
+     * @param startTime start of the range
+     * @param endTime end of the range
+     * @param result processes of every active thread, which must not be modified afterwards
+     */
+    public synchronized void put(long startTime, long endTime, HashMap<Long, HashSet<Integer>> result) {
+        long resultWeight = 1 + result.size();
+        for(HashSet<Integer> processes : result.values()) {
+            resultWeight += processes.size();
+        }
+        if(resultWeight > maxWeight) {
+            return;
+        }
+        Range range = new Range(startTime, endTime);
+        remove(range);
+        results.put(range, result);
+        weights.put(range, resultWeight);
+        weight += resultWeight;
+        Iterator<Range> eldest = results.keySet().iterator();
+        while((weight > maxWeight || results.size() > maxRanges) && eldest.hasNext()) {
+            Range evicted = eldest.next();
+            eldest.remove();
+            weight -= weights.remove(evicted);
+            evictions++;
+        }
+    }
+
+    /**
+     * This method invalidates the cached ranges in which a new interval is active.
+     * @param start start time of the interval
+     * @param end end time of the interval, Interval.OPEN if it has not ended
+     */
+    public synchronized void intervalAdded(long start, long end) {
+        invalidate(start, Long.MIN_VALUE, start, end);
+    }
+
+    /**
+     * This method invalidates the cached ranges in which an interval is active before its end time is changed but not
+     * after, or the other way round.
+     * @param start start time of the interval
+     * @param oldEnd end time before the change
+     * @param newEnd end time after the change
+     */
+    public synchronized void intervalEnded(long start, long oldEnd, long newEnd) {
+        invalidate(start, oldEnd, start, newEnd);
+    }
+
+    /**
+     * Removes every cached result, when the intervals are loaded again
+     */
+    public synchronized void clear() {
+        results.clear();
+        weights.clear();
+        weight = 0;
+    }
+
+    /**
+     * Invalidates the ranges in which the interval [oldStart, oldEnd] and [newStart, newEnd] are not both active or
+     * both inactive. An old end of Long.MIN_VALUE stands for an interval which didn't exist.
+     */
+    private void invalidate(long oldStart, long oldEnd, long newStart, long newEnd) {
+        Iterator<Range> iterator = results.keySet().iterator();
+        while(iterator.hasNext()) {
+            Range range = iterator.next();
+            boolean before = oldEnd != Long.MIN_VALUE
+                    && BasicAPI.checkTimeRange(oldStart, oldEnd, range.startTime, range.endTime);
+            boolean after = BasicAPI.checkTimeRange(newStart, newEnd, range.startTime, range.endTime);
+            if(before != after) {
+                iterator.remove();
+                weight -= weights.remove(range);
+                invalidations++;
+            }
+        }
+    }
+
+    private void remove(Range range) {
+        if(results.remove(range) != null) {
+            weight -= weights.remove(range);
+        }
+    }
+
+    /**
+     * Getter for the number of cached results
+     * @return number of cached ranges
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * This method returns the counters of the cache
+     * @return hits, misses, evictions, invalidations and the size of the cache
+     */
+    public synchronized String getStats() {
+        long queries = hits + misses;
+        return String.format(Locale.ROOT, "Query cache : %d hits, %d misses (%.1f%% hit rate), %d evictions,"
+                        + " %d invalidations, %d ranges cached, weight %d of %d", hits, misses,
+                queries == 0 ? 0.0 : 100.0 * hits / queries, evictions, invalidations, results.size(), weight,
+                maxWeight);
+    }
+}
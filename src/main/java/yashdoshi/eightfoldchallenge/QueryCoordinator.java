@@ -0,0 +1,389 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * QueryCoordinator Class answers the BasicAPI queries over intervals which are too many for a single JVM. The
+ * intervals of one or more dumps are sharded by their process id across several QueryWorker JVMs, which the
+ * coordinator launches as local processes, and every query is scattered to all the workers and their partial results
+ * are gathered and merged :
+ * Active threads - the (threadId, processId) pairs of the workers are grouped by thread, a thread running on the
+ * processes of several shards is returned once with all its processes.
+ * Lifetime statistics - the LifetimeStats of every process and every thread name are merged with the pairwise formula
+ * of their mean and variance and by adding their quantile sketches, which gives the same statistics as a single JVM.
+ * Concurrency - every worker returns the live threads of its shard at the start of the range and the net change at
+ * every millisecond where one of its threads starts or ends. The changes of all the workers are merged on their time
+ * and swept once, which gives the exact peak and time weighted average of the concurrent threads of all the shards.
+ * Active threads result : Logs/Sharded-BasicAPI.log
+ * Concurrency result : Logs/Sharded-concurrency.txt
+ * Lifetime result : Logs/Sharded-BonusAPI-Part2.txt
+ * Usage : QueryCoordinator [--workers=N] [folder...], every folder is the Resources folder of a dump
+ */
+public class QueryCoordinator implements Closeable {
+
+    /**
+     * Connection to a worker process, used by a single request at a time
+     */
+    private static class WorkerClient implements Closeable {
+        private final Process process;
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        WorkerClient(Process process, int port) throws IOException {
+            this.process = process;
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Sends the request and returns the input of the response, once its opcode is read
+         */
+        DataInputStream request(int opcode, long... args) throws IOException {
+            out.writeInt(opcode);
+            for(long arg : args) {
+                out.writeLong(arg);
+            }
+            out.flush();
+            int response = in.readInt();
+            if(response == QueryWorker.ERROR) {
+                throw new IOException("Worker failed : " + in.readUTF());
+            }
+            if(response != opcode) {
+                throw new IOException("Unexpected response " + response + " to " + opcode);
+            }
+            return in;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeInt(QueryWorker.QUIT);
+                out.flush();
+                socket.close();
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Partial result of a worker
+     */
+    private interface Gather<T> {
+        T gather(WorkerClient worker) throws IOException;
+    }
+
+    private final List<WorkerClient> workers = new ArrayList<>();
+    private final ExecutorService pool;
+
+    /**
+     * Launches a worker process for every shard and connects to it once it has loaded its intervals.
+     * @param shards number of workers
+     * @param folders Resources folders of the dumps
+     * @throws IOException if a worker fails to start
+     */
+    public QueryCoordinator(int shards, List<String> folders) throws IOException {
+        pool = Executors.newFixedThreadPool(shards);
+        List<Process> processes = new ArrayList<>();
+        try {
+            for(int shard = 0; shard < shards; shard++) {
+                processes.add(launch(shard, shards, folders));
+            }
+            //The workers load their shards at the same time
+            for(Process process : processes) {
+                workers.add(new WorkerClient(process, readPort(process)));
+            }
+        } catch (IOException e) {
+            close();
+            for(Process process : processes) {
+                process.destroy();
+            }
+            throw e;
+        }
+    }
+
+    private static Process launch(int shard, int shards, List<String> folders) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(QueryWorker.class.getName());
+        command.add(String.valueOf(shard));
+        command.add(String.valueOf(shards));
+        command.addAll(folders);
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Reads the port from the first line of the worker. The rest of its output is copied to the output of the
+     * coordinator by a daemon thread, as a worker blocks once the pipe of its output is full.
+     */
+    private static int readPort(Process process) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(),
+                StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        if(line == null || !line.startsWith(QueryWorker.LISTENING)) {
+            throw new IOException("Worker did not start : " + line);
+        }
+        System.out.println("Worker " + line);
+        Thread drain = new Thread(() -> {
+            try {
+                for(String output = reader.readLine(); output != null; output = reader.readLine()) {
+                    System.out.println("Worker : " + output);
+                }
+            } catch (IOException e) {
+                //The worker is stopped
+            }
+        }, "worker-output");
+        drain.setDaemon(true);
+        drain.start();
+        String port = line.substring(QueryWorker.LISTENING.length());
+        return Integer.parseInt(port.substring(0, port.indexOf(' ')));
+    }
+
+    /**
+     * Sends the request to every worker at the same time and waits for all the partial results
+     */
+    private <T> List<T> scatter(Gather<T> gather) throws IOException {
+        List<Future<T>> futures = new ArrayList<>();
+        for(WorkerClient worker : workers) {
+            futures.add(pool.submit(() -> {
+                synchronized(worker) {
+                    return gather.gather(worker);
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            for(Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the workers", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * This method returns the threads active in the time range on the processes of all the shards.
+     * @param startTime start of the range in millis
+     * @param endTime end of the range in millis
+     * @return processes of every active thread
+     * @throws IOException
+     */
+    public HashMap<Long, TreeSet<Integer>> getActiveThreads(long startTime, long endTime) throws IOException {
+        HashMap<Long, TreeSet<Integer>> activeThreads = new HashMap<>();
+        for(long[] pairs : scatter(worker -> {
+            DataInputStream in = worker.request(QueryWorker.ACTIVE, startTime, endTime);
+            long[] threads = new long[2 * in.readInt()];
+            for(int i = 0; i < threads.length; i += 2) {
+                threads[i] = in.readLong();
+                threads[i + 1] = in.readInt();
+            }
+            return threads;
+        })) {
+            for(int i = 0; i < pairs.length; i += 2) {
+                activeThreads.computeIfAbsent(pairs[i], t -> new TreeSet<>()).add((int) pairs[i + 1]);
+            }
+        }
+        return activeThreads;
+    }
+
+    /**
+     * This method merges the lifetime statistics of the shards.
+     * @param processStats filled with the statistics of every process
+     * @param threadNameStats filled with the statistics of every thread name
+     * @throws IOException
+     */
+    public void getLifetimeStats(Map<Integer, LifetimeStats> processStats, Map<String, LifetimeStats> threadNameStats)
+            throws IOException {
+        for(Object[] partial : scatter(worker -> {
+            DataInputStream in = worker.request(QueryWorker.LIFETIME);
+            HashMap<Integer, LifetimeStats> processes = new HashMap<>();
+            for(int i = in.readInt(); i > 0; i--) {
+                processes.put(in.readInt(), LifetimeStats.read(in));
+            }
+            HashMap<String, LifetimeStats> names = new HashMap<>();
+            for(int i = in.readInt(); i > 0; i--) {
+                names.put(in.readUTF(), LifetimeStats.read(in));
+            }
+            return new Object[] {processes, names};
+        })) {
+            @SuppressWarnings("unchecked")
+            Map<Integer, LifetimeStats> processes = (Map<Integer, LifetimeStats>) partial[0];
+            @SuppressWarnings("unchecked")
+            Map<String, LifetimeStats> names = (Map<String, LifetimeStats>) partial[1];
+            for(Map.Entry<Integer, LifetimeStats> process : processes.entrySet()) {
+                processStats.computeIfAbsent(process.getKey(), p -> new LifetimeStats()).merge(process.getValue());
+            }
+            for(Map.Entry<String, LifetimeStats> name : names.entrySet()) {
+                threadNameStats.computeIfAbsent(name.getKey(), n -> new LifetimeStats()).merge(name.getValue());
+            }
+        }
+    }
+
+    /**
+     * This method returns the peak and the time weighted average of the concurrent threads of all the shards in the
+     * range [from, to). A thread is live from its start until its end, a thread without an end is live until the end
+     * of the range.
+     * @param from start of the range in millis
+     * @param to end of the range in millis
+     * @return concurrency of the range, no threads at from if the range is empty (to not after from)
+     * @throws IOException
+     */
+    public ConcurrencyTimeline.Concurrency getConcurrency(long from, long to) throws IOException {
+        if(to <= from) {
+            return new ConcurrencyTimeline.Concurrency(0, Math.floorDiv(from, 1000), 0.0);
+        }
+        long live = 0;
+        //Net change of the live threads of all the shards at every millisecond
+        TreeMap<Long, Long> changes = new TreeMap<>();
+        for(Object[] partial : scatter(worker -> {
+            DataInputStream in = worker.request(QueryWorker.CONCURRENCY, from, to);
+            long start = in.readLong();
+            long[] times = new long[in.readInt()];
+            long[] deltas = new long[times.length];
+            for(int i = 0; i < times.length; i++) {
+                times[i] = in.readLong();
+                deltas[i] = in.readInt();
+            }
+            return new Object[] {start, times, deltas};
+        })) {
+            live += (Long) partial[0];
+            long[] times = (long[]) partial[1];
+            long[] deltas = (long[]) partial[2];
+            for(int i = 0; i < times.length; i++) {
+                changes.merge(times[i], deltas[i], Long::sum);
+            }
+        }
+        long peak = live;
+        long peakTime = from;
+        long time = from;
+        double integral = 0;
+        for(Map.Entry<Long, Long> change : changes.entrySet()) {
+            integral += (double) live * (change.getKey() - time);
+            time = change.getKey();
+            live += change.getValue();
+            if(live > peak) {
+                peak = live;
+                peakTime = time;
+            }
+        }
+        integral += (double) live * (to - time);
+        return new ConcurrencyTimeline.Concurrency((int) peak, Math.floorDiv(peakTime, 1000),
+                integral / (to - from));
+    }
+
+    /**
+     * Stops the workers
+     */
+    @Override
+    public void close() {
+        for(WorkerClient worker : workers) {
+            try {
+                worker.close();
+            } catch (IOException e) {
+                System.out.println("Worker did not stop cleanly : " + e.getMessage());
+            }
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * The main method launches the workers, reads the range of timestamps from the user and writes the active threads,
+     * the concurrency of the range and the lifetime statistics merged from all the shards.
+     * @param args --workers=N for the number of worker processes (2 by default), followed by the Resources folders of
+     *             the dumps (Resources by default)
+     * @throws IOException In case a worker fails or the results cannot be written.
+     * @throws ParseException Parsing the string(Log) in a particular format especially for the Date could create an
+     * issue.
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        int shards = 2;
+        List<String> folders = new ArrayList<>();
+        for(String arg : args) {
+            if(arg.startsWith("--workers=")) {
+                shards = Math.max(1, Integer.parseInt(arg.substring("--workers=".length())));
+            }
+            else {
+                folders.add(arg);
+            }
+        }
+        if(folders.isEmpty()) {
+            folders.add("Resources");
+        }
+        long begin = System.nanoTime();
+        try(QueryCoordinator coordinator = new QueryCoordinator(shards, folders)) {
+            System.out.println(shards + " workers started in " + (System.nanoTime() - begin) / 1000000 + " ms");
+            Scanner sc = new Scanner(System.in);
+            System.out.println("Please enter startTime(t1) and endTime(t2) on separate lines");
+            String t1 = sc.nextLine();
+            String t2 = sc.nextLine();
+            long startTime = LogParser.parseTimestamp(t1);
+            long endTime = LogParser.parseTimestamp(t2);
+            if(startTime > endTime) {
+                long t = startTime;
+                startTime = endTime;
+                endTime = t;
+            }
+
+            HashMap<Long, TreeSet<Integer>> activeThreads = coordinator.getActiveThreads(startTime, endTime);
+            try(BufferedWriter writer = new BufferedWriter(new FileWriter("Resources/Sharded-BasicAPI.log"))) {
+                for(Map.Entry<Long, TreeSet<Integer>> thread : activeThreads.entrySet()) {
+                    writer.append(thread.getKey() + ":" + thread.getValue() + "\n");
+                }
+                writer.append("Number of Active threads in the time range " + LogParser.formatTimestamp(startTime)
+                        + " - " + LogParser.formatTimestamp(endTime) + " : " + activeThreads.size());
+            }
+
+            //The seconds from t1 to t2, the same as the ConcurrencyTimeline of a single dump
+            long from = Math.floorDiv(startTime, 1000) * 1000;
+            long to = (Math.floorDiv(endTime, 1000) + 1) * 1000;
+            try(BufferedWriter writer = new BufferedWriter(new FileWriter("Resources/Sharded-concurrency.txt"))) {
+                writer.append("Concurrent threads from " + t1.trim() + " to " + t2.trim() + " (whole seconds)\n");
+                writer.append("All processes : " + coordinator.getConcurrency(from, to) + "\n");
+            }
+
+            TreeMap<Integer, LifetimeStats> processStats = new TreeMap<>();
+            TreeMap<String, LifetimeStats> threadNameStats = new TreeMap<>();
+            coordinator.getLifetimeStats(processStats, threadNameStats);
+            LifetimeStats all = new LifetimeStats();
+            for(LifetimeStats stats : processStats.values()) {
+                all.merge(stats);
+            }
+            try(BufferedWriter writer = new BufferedWriter(new FileWriter("Resources/Sharded-BonusAPI-Part2.txt"))) {
+                writer.append("Average of all the threads lifetime : " + all.getMean() + " s\n");
+                writer.append("Standard Deviation of all the threads lifetime : " + all.getStandardDeviation()
+                        + " s\n");
+                writer.append("\nPercentiles of all the threads lifetime\n");
+                writer.append(BasicAPI.formatStats("all", all));
+                writer.append("\nLifetime per process id\n");
+                for(Map.Entry<Integer, LifetimeStats> process : processStats.entrySet()) {
+                    writer.append(BasicAPI.formatStats(String.valueOf(process.getKey()), process.getValue()));
+                }
+                writer.append("\nLifetime per thread name\n");
+                for(Map.Entry<String, LifetimeStats> threadName : threadNameStats.entrySet()) {
+                    writer.append(BasicAPI.formatStats(threadName.getKey(), threadName.getValue()));
+                }
+            }
+            System.out.println(activeThreads.size() + " active threads, results written to Resources/Sharded-*");
+        }
+    }
+}
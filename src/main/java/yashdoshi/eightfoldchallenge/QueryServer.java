@@ -0,0 +1,156 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * QueryServer Class keeps the BasicAPI intervals in memory and answers the time range queries over a local socket,
+ * instead of reading all the sanitized files again for every single query.
+ * A client sends the startTime(t1) and endTime(t2) on separate lines, same as the standard input of BasicAPI, and can
+ * send any number of ranges on the same connection. The active threads are streamed back in the same format as
+ * Resources/BasicAPI.log, followed by the time taken by the query and an empty line marking the end of the response.
+ * Connections are served by a fixed thread pool, so many clients can query at the same time.
+ * With --follow, the Log files are followed from the checkpoint of the last SanitizeFiles run. The new logs are
+ * sanitized and their intervals are added to the loaded intervals, so the queries include them without a restart.
+ * A client can also send "stats" on a line of its own, the latency of the queries and the counters of the query cache
+ * are sent back instead. The PipelineMetrics are registered over JMX as well.
+ * "concurrency" on a line of its own, followed by t1 and t2 on separate lines, sends back the peak and the average
+ * concurrent threads of the range, for all the threads and for every process, from the ConcurrencyTimeline. The
+ * timeline has a granularity of one second, so the range is widened to the whole seconds of t1 and t2.
+ * With --segments, the sanitized logs are read from the SegmentStore and the active threads refer to their logs by
+ * their handles in the store.
+ * Usage : QueryServer [port] [threads] [--follow] [--segments]
+ */
+public class QueryServer {
+
+    private static String sanitizedLogFilesPath = "Resources/sanitizedLogs";
+    private static final String checkpointPath = "Resources/sanitize.checkpoint";
+
+    /**
+     * The main method loads the intervals once and then accepts connections on the loopback address.
+     * @param args optional port (default 9090) and number of threads serving the connections (default number of cores)
+     * @throws IOException In case there is an issue while reading the sanitized files or opening the socket.
+     * @throws ParseException Parsing the string(Log) in a particular format especially for the Date could create an
+     * issue.
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        List<String> values = new ArrayList<>();
+        boolean follow = false;
+        for(String arg : args) {
+            if(arg.equals("--follow")) {
+                follow = true;
+            }
+            else if(arg.equals("--segments")) {
+                sanitizedLogFilesPath = "Resources/segmentStore";
+                SanitizeFiles.setSegments(true);
+            }
+            else {
+                values.add(arg);
+            }
+        }
+        int port = values.size() > 0 ? Integer.parseInt(values.get(0)) : 9090;
+        int threads = values.size() > 1 ? Integer.parseInt(values.get(1)) : Runtime.getRuntime().availableProcessors();
+
+        PipelineMetrics.register();
+        long begin = System.nanoTime();
+        BasicAPI.loadIntervals(sanitizedLogFilesPath);
+        System.out.println("Intervals loaded in " + (System.nanoTime() - begin) / 1000000 + " ms");
+        System.out.println(BasicAPI.getMemoryReport());
+        if(follow) {
+            startFollower();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try(ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Listening for time ranges on " + serverSocket.getLocalSocketAddress());
+            System.out.println("Send t1 and t2 on separate lines, \"concurrency\" first for the concurrent threads of"
+                    + " the whole seconds of t1 and t2, or \"stats\"");
+            while(true) {
+                Socket socket = serverSocket.accept();
+                pool.execute(() -> serve(socket));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * This method starts a daemon thread following the Log files. Every new log is sanitized and its interval is added
+     * to the BasicAPI intervals.
+     */
+    private static void startFollower() {
+        if(!new File(checkpointPath).exists()) {
+            System.out.println("No checkpoint found at " + checkpointPath
+                    + ", the Log files are followed from the start");
+        }
+        SanitizeFiles.addListener(BasicAPI::ingest);
+        Thread follower = new Thread(() -> {
+            try {
+                SanitizeFiles.follow(1000);
+            } catch (IOException | ParseException e) {
+                System.out.println("Following the Log files failed : " + e.getMessage());
+            }
+        }, "log-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    /**
+     * This method answers all the time ranges sent on a single connection until the client closes it.
+     * @param socket connection of the client
+     */
+    private static void serve(Socket socket) {
+        try(Socket s = socket;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(),
+                    StandardCharsets.UTF_8));
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(),
+                    StandardCharsets.UTF_8))) {
+            String t1 = reader.readLine();
+            while(t1 != null) {
+                if(t1.trim().equals("stats")) {
+                    writer.append(PipelineMetrics.getQuerySummary() + "\n" + BasicAPI.getCacheStats() + "\n\n");
+                    writer.flush();
+                    t1 = reader.readLine();
+                    continue;
+                }
+                boolean concurrency = t1.trim().equals("concurrency");
+                if(concurrency) {
+                    t1 = reader.readLine();
+                    if(t1 == null) {
+                        break;
+                    }
+                }
+                String t2 = reader.readLine();
+                if(t2 == null) {
+                    break;
+                }
+                long begin = System.nanoTime();
+                try {
+                    if(!concurrency) {
+                        BasicAPI.getActiveThreads(t1.trim(), t2.trim(), sanitizedLogFilesPath, writer);
+                    }
+                    else if(!BasicAPI.writeConcurrency(t1.trim(), t2.trim(), writer)) {
+                        writer.append(BasicAPI.NO_TIMELINE + "\n");
+                    }
+                    writer.append("\nQuery time : " + (System.nanoTime() - begin) / 1000 + " us\n");
+                } catch (ParseException e) {
+                    writer.append("Invalid time range : " + e.getMessage() + "\n");
+                }
+                //Empty line marks the end of the response
+                writer.append("\n");
+                writer.flush();
+                t1 = reader.readLine();
+            }
+        } catch (IOException e) {
+            System.out.println("Connection closed : " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.*;
+
+/**
+ * QueryWorker class holds a single shard of the intervals of one or more dumps and answers the partial queries of the
+ * QueryCoordinator over a local socket. The intervals are sharded by their process id, a worker keeps the intervals of
+ * the processes whose hash falls in its shard, so every process is held by exactly one worker.
+ * Every folder is the Resources folder of a dump, as written by SanitizeFiles : the intervals are read from its
+ * sidecar (intervals.idx), which must be up to date with its sanitized files.
+ * Once loaded, the worker prints the port it listens on and answers the requests of the coordinator on a single
+ * connection. A request is an opcode followed by its arguments, written with a DataOutputStream :
+ * ACTIVE (t1, t2) - every (threadId, processId) of the shard active in the range as per BasicAPI.checkTimeRange
+ * LIFETIME - the LifetimeStats of every process and of every thread name of the shard
+ * CONCURRENCY (from, to) - the threads of the shard live at from, followed by the net change of the live threads at
+ * every millisecond of [from, to) where a thread starts or ends, a thread is live from its start until its end
+ * QUIT - closes the connection and stops the worker
+ * Usage : QueryWorker shard shards folder...
+ */
+public class QueryWorker {
+
+    static final int ACTIVE = 1;
+    static final int LIFETIME = 2;
+    static final int CONCURRENCY = 3;
+    static final int QUIT = 4;
+    static final int ERROR = -1;
+    static final String LISTENING = "Listening on ";
+
+    private final IntervalStore store;
+    private final IntervalIndex index;
+    private final HashMap<Integer, LifetimeStats> processStats = new HashMap<>();
+    private final HashMap<String, LifetimeStats> threadNameStats = new HashMap<>();
+
+    /**
+     * Loads the intervals of the shard from the sidecars of the folders
+     * @param shard shard of the worker, in the range [0, shards)
+     * @param shards number of workers
+     * @param folders Resources folders of the dumps
+     * @throws IOException if a sidecar is missing or stale
+     */
+    public QueryWorker(int shard, int shards, List<String> folders) throws IOException {
+        store = new IntervalStore();
+        for(String folder : folders) {
+            File sidecar = new File(folder, "intervals.idx");
+            IntervalStore intervals = IntervalSidecar.readStore(sidecar,
+                    IntervalSidecar.fingerprint(new File(folder, "sanitizedLogs")));
+            if(intervals == null) {
+                throw new IOException("No up to date sidecar at " + sidecar + ", run SanitizeFiles first");
+            }
+            for(int slot = 0; slot < intervals.size(); slot++) {
+                int processId = intervals.getProcessId(slot);
+                if(ShardedLogWriter.shardOf(processId, shards) != shard) {
+                    continue;
+                }
+                store.add(intervals.getThreadId(slot), processId, intervals.getStartTime(slot),
+                        intervals.getEndTime(slot), intervals.getThreadName(slot));
+                if(intervals.hasEndTime(slot)) {
+                    double seconds = (intervals.getEndTime(slot) - intervals.getStartTime(slot)) / 1000.0;
+                    processStats.computeIfAbsent(processId, p -> new LifetimeStats()).add(seconds);
+                    String threadName = intervals.getThreadName(slot);
+                    threadNameStats.computeIfAbsent(threadName == null ? "unknown" : threadName,
+                            n -> new LifetimeStats()).add(seconds);
+                }
+            }
+        }
+        store.trim();
+        index = new IntervalIndex(store);
+    }
+
+    /**
+     * The main method loads the shard, prints the port it listens on and answers the coordinator until it quits.
+     * @param args shard, number of shards and the Resources folders of the dumps
+     * @throws IOException In case the sidecars cannot be read or the socket fails.
+     */
+    public static void main(String[] args) throws IOException {
+        int shard = Integer.parseInt(args[0]);
+        int shards = Integer.parseInt(args[1]);
+        QueryWorker worker = new QueryWorker(shard, shards, Arrays.asList(args).subList(2, args.length));
+        try(ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            //The coordinator reads the port from the first line of the output
+            System.out.println(LISTENING + serverSocket.getLocalPort() + " with " + worker.store.size()
+                    + " intervals of shard " + shard);
+            System.out.flush();
+            try(Socket socket = serverSocket.accept()) {
+                worker.serve(socket);
+            }
+        }
+    }
+
+    /**
+     * This method answers the requests of the coordinator until it quits or closes the connection.
+     * @param socket connection of the coordinator
+     * @throws IOException
+     */
+    private void serve(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        while(true) {
+            int opcode;
+            try {
+                opcode = in.readInt();
+            } catch (EOFException e) {
+                return;
+            }
+            if(opcode == QUIT) {
+                return;
+            }
+            if(opcode == ACTIVE) {
+                writeActive(in.readLong(), in.readLong(), out);
+            }
+            else if(opcode == LIFETIME) {
+                writeLifetime(out);
+            }
+            else if(opcode == CONCURRENCY) {
+                writeConcurrency(in.readLong(), in.readLong(), out);
+            }
+            else {
+                out.writeInt(ERROR);
+                out.writeUTF("Unknown opcode " + opcode);
+            }
+            out.flush();
+        }
+    }
+
+    private void writeActive(long startTime, long endTime, DataOutputStream out) throws IOException {
+        //A thread is active once on a process, however many of its intervals are in the range
+        HashMap<Long, HashSet<Integer>> threads = new HashMap<>();
+        index.query(startTime, endTime, (threadId, processId, start, end) ->
+                threads.computeIfAbsent(threadId, t -> new HashSet<>()).add(processId));
+        int pairs = 0;
+        for(HashSet<Integer> processes : threads.values()) {
+            pairs += processes.size();
+        }
+        out.writeInt(ACTIVE);
+        out.writeInt(pairs);
+        for(Map.Entry<Long, HashSet<Integer>> thread : threads.entrySet()) {
+            for(int processId : thread.getValue()) {
+                out.writeLong(thread.getKey());
+                out.writeInt(processId);
+            }
+        }
+    }
+
+    private void writeLifetime(DataOutputStream out) throws IOException {
+        out.writeInt(LIFETIME);
+        out.writeInt(processStats.size());
+        for(Map.Entry<Integer, LifetimeStats> process : processStats.entrySet()) {
+            out.writeInt(process.getKey());
+            process.getValue().write(out);
+        }
+        out.writeInt(threadNameStats.size());
+        for(Map.Entry<String, LifetimeStats> threadName : threadNameStats.entrySet()) {
+            out.writeUTF(threadName.getKey());
+            threadName.getValue().write(out);
+        }
+    }
+
+    /**
+     * Writes the threads live at from and the net change of the live threads at every millisecond of [from, to)
+     * where a thread starts or ends. Only the intervals overlapping the range are visited : the index returns the
+     * ones starting inside (from, to) or running at from, and a second query around from adds the ones starting
+     * exactly at from. A thread is counted once on its process while any of its intervals is open, as defined by
+     * LivePairs, so the intervals of every (threadId, processId) are merged before they are counted.
+     */
+    private void writeConcurrency(long from, long to, DataOutputStream out) throws IOException {
+        List<long[]> intervals = new ArrayList<>();
+        index.query(from, to, (threadId, processId, start, end) ->
+                intervals.add(new long[] {threadId, processId, start, end}));
+        index.query(from - 1, from + 1, (threadId, processId, start, end) -> {
+            if(start == from && end > from) {
+                intervals.add(new long[] {threadId, processId, start, end});
+            }
+        });
+        intervals.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                : a[1] != b[1] ? Long.compare(a[1], b[1]) : Long.compare(a[2], b[2]));
+        long live = 0;
+        TreeMap<Long, Integer> changes = new TreeMap<>();
+        int i = 0;
+        while(i < intervals.size()) {
+            long[] pair = intervals.get(i);
+            long start = pair[2];
+            long end = pair[3];
+            for(i++; i < intervals.size() && intervals.get(i)[0] == pair[0] && intervals.get(i)[1] == pair[1]
+                    && intervals.get(i)[2] <= end; i++) {
+                end = Math.max(end, intervals.get(i)[3]);
+            }
+            if(start <= from) {
+                live++;
+            }
+            else {
+                changes.merge(start, 1, Integer::sum);
+            }
+            if(end < to) {
+                changes.merge(end, -1, Integer::sum);
+            }
+        }
+        out.writeInt(CONCURRENCY);
+        out.writeLong(live);
+        out.writeInt(changes.size());
+        for(Map.Entry<Long, Integer> change : changes.entrySet()) {
+            out.writeLong(change.getKey());
+            out.writeInt(change.getValue());
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ReadAheadLogSource class reads the logs of a LogSource ahead of the merge. A producer task reads the lines of the
+ * file, puts the breaks of every log statement back together and parses the logs, in batches, and hands the batches
+ * to the merge through a bounded single producer, single consumer ring. The merge only takes the next log of a batch,
+ * so the disk and the parsing are no longer on its path, and the parsing of all the Log files is spread over the
+ * threads of a small pool.
+ * The producer runs on the pool until the ring is full and then returns its thread to the pool, it is scheduled again
+ * once the merge has taken a batch. A pool with fewer threads than files is therefore never blocked by a slow file,
+ * and a file which is far ahead of the merge holds at the most RING_SIZE batches.
+ * The logs are returned in the order of the file, so the merge gives the same sanitized files with or without it.
+ */
+public class ReadAheadLogSource implements LogSource {
+
+    public static final int BATCH_SIZE = 256;
+    /**
+     * Number of batches in the ring, a power of 2
+     */
+    public static final int RING_SIZE = 8;
+    /**
+     * Time the merge waits for a batch before checking the producer again
+     */
+    private static final long WAIT_NANOS = 100_000;
+
+    private final LogSource source;
+    private final Executor executor;
+    private final LogLine[][] ring = new LogLine[RING_SIZE][];
+    /**
+     * Number of batches taken by the merge, only written by the merge
+     */
+    private volatile long head = 0;
+    /**
+     * Number of batches published by the producer, only written by the producer
+     */
+    private volatile long tail = 0;
+    /**
+     * Set by the producer once the source is exhausted or failed, after its last batch is published
+     */
+    private volatile boolean finished = false;
+    private volatile Exception failure;
+    private volatile boolean closed = false;
+    private volatile Thread waiting;
+    /**
+     * The producer is scheduled on the pool or running
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Runnable producer = this::produce;
+    private LogLine[] batch;
+    private int index = 0;
+    private long stalls = 0;
+
+    /**
+     * Starts reading the source ahead on the pool
+     * @param source source to be read ahead
+     * @param executor pool the producer runs on
+     */
+    public ReadAheadLogSource(LogSource source, Executor executor) {
+        this.source = source;
+        this.executor = executor;
+        schedule();
+    }
+
+    /**
+     * Creates a pool of daemon threads for the producers of the Log files
+     * @param threads number of threads, usually the number of cores
+     * @return pool to be shut down once the files are merged
+     */
+    public static ExecutorService createPool(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "sanitize-read-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the next log of the current batch, the merge waits for the producer once all the published batches
+     * are taken.
+     * @return the next log, or null if there are no more logs in the file
+     * @throws IOException if the producer failed to read the file
+     * @throws ParseException if the producer failed to parse a log
+     */
+    @Override
+    public LogLine next() throws IOException, ParseException {
+        if(batch == null || index == batch.length) {
+            batch = take();
+            index = 0;
+            if(batch == null) {
+                return null;
+            }
+        }
+        return batch[index++];
+    }
+
+    /**
+     * Takes the next batch from the ring
+     * @return the batch, or null once the source is exhausted
+     */
+    private LogLine[] take() throws IOException, ParseException {
+        long h = head;
+        if(h == tail) {
+            stalls++;
+            waiting = Thread.currentThread();
+            //The producer publishes its last batch before it finishes, so the ring is checked again after finished
+            while(h == tail && !finished) {
+                schedule();
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+            waiting = null;
+            if(h == tail) {
+                rethrow();
+                return null;
+            }
+        }
+        int slot = (int) (h & (RING_SIZE - 1));
+        LogLine[] next = ring[slot];
+        ring[slot] = null;
+        head = h + 1;
+        schedule();
+        return next;
+    }
+
+    /**
+     * Schedules the producer on the pool, unless it is already scheduled or has nothing to do
+     */
+    private void schedule() {
+        if(!finished && !closed && tail - head < RING_SIZE && scheduled.compareAndSet(false, true)) {
+            executor.execute(producer);
+        }
+    }
+
+    /**
+     * Producer task, reads batches until the ring is full or the source is exhausted
+     */
+    private void produce() {
+        while(true) {
+            try {
+                while(!closed && !finished && tail - head < RING_SIZE) {
+                    publish(readBatch());
+                }
+            } catch (IOException | ParseException | RuntimeException e) {
+                failure = e;
+                finished = true;
+            }
+            scheduled.set(false);
+            //The merge may have taken a batch after the ring was found full, keep producing if nobody else will
+            if(closed || finished || tail - head == RING_SIZE || !scheduled.compareAndSet(false, true)) {
+                break;
+            }
+        }
+        Thread merge = waiting;
+        if(merge != null) {
+            LockSupport.unpark(merge);
+        }
+    }
+
+    /**
+     * Reads up to BATCH_SIZE logs, the source is finished once it returns no more logs
+     */
+    private LogLine[] readBatch() throws IOException, ParseException {
+        LogLine[] logs = new LogLine[BATCH_SIZE];
+        int count = 0;
+        while(count < BATCH_SIZE) {
+            LogLine log = source.next();
+            if(log == null) {
+                break;
+            }
+            logs[count++] = log;
+        }
+        return count == BATCH_SIZE ? logs : Arrays.copyOf(logs, count);
+    }
+
+    private void publish(LogLine[] logs) {
+        long t = tail;
+        if(logs.length > 0) {
+            ring[(int) (t & (RING_SIZE - 1))] = logs;
+            tail = t + 1;
+        }
+        if(logs.length < BATCH_SIZE) {
+            finished = true;
+        }
+        Thread merge = waiting;
+        if(merge != null) {
+            LockSupport.unpark(merge);
+        }
+    }
+
+    private void rethrow() throws IOException, ParseException {
+        Exception e = failure;
+        if(e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if(e instanceof ParseException) {
+            throw (ParseException) e;
+        }
+        if(e != null) {
+            throw (RuntimeException) e;
+        }
+    }
+
+    /**
+     * Getter for the number of times the merge had to wait for the producer
+     * @return number of times the ring was empty
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Stops the producer and closes the source once the producer has returned its thread
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        while(scheduled.get()) {
+            LockSupport.parkNanos(this, WAIT_NANOS);
+        }
+        source.close();
+    }
+}
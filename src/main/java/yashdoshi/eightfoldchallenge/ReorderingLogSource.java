@@ -0,0 +1,308 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * ReorderingLogSource class returns the logs of a Log file which is not sorted on the timestamp in the order of their
+ * timestamps, without holding the whole file in memory. The logs of the file pass through a reorder buffer, a heap on
+ * the timestamp which releases a log once a log later than the lateness watermark has been read after it, or once
+ * the buffer is full. A log which is late by less than the watermark is put back in its place by the buffer.
+ * A log which arrives after a later log was already released is too late for the buffer. Such a log can be anywhere
+ * in the file, so the file is read twice : the first pass only collects the late logs, sorts them in runs of bounded
+ * size and spills every full run to disk. The second pass reads the file again through the same buffer, skips the late
+ * logs which are found again at the same places, and merges the released logs with the sorted runs. Logs with the same
+ * timestamp are returned in the order of the file, as a stable sort of the whole file would return them.
+ * Memory is bounded by the buffer and a single run, the late logs are on disk.
+ * Layout of a run : for every log, position in the file (long), timestamp (long), processId (int), threadId (long),
+ * thread name and log statement as UTF-8 bytes with their length (int)
+ */
+public class ReorderingLogSource implements LogSource {
+
+    /**
+     * Opens the Log file, once for every pass
+     */
+    public interface Opener {
+        LogSource open() throws IOException;
+    }
+
+    /**
+     * Maximum number of logs in the reorder buffer
+     */
+    public static final int MAX_BUFFERED = 100000;
+    /**
+     * Maximum number of late logs sorted in memory before they are spilled as a run
+     */
+    public static final int RUN_SIZE = 65536;
+
+    private final Opener opener;
+    private final long latenessMillis;
+    private final File spillFolder;
+    private final int fileId;
+    private final ReorderBuffer buffer;
+    /**
+     * Runs of the late logs, the last run stays in memory
+     */
+    private final List<File> runFiles = new ArrayList<>();
+    private final List<Run> runs = new ArrayList<>();
+    private final PriorityQueue<Run> heads = new PriorityQueue<>((o1, o2) -> compare(o1.head, o2.head));
+    private long lateLogs = 0;
+
+    /**
+     * Reads the whole file once to collect its late logs and opens it again for the second pass.
+     * @param opener opens the Log file
+     * @param latenessMillis maximum time a log can be late and still be put back in its place by the buffer
+     * @param spillFolder folder the runs are spilled to, they are deleted when the source is closed
+     * @param fileId Id of the Log file, stored in the spilled logs
+     * @throws IOException
+     * @throws ParseException
+     */
+    public ReorderingLogSource(Opener opener, long latenessMillis, File spillFolder, int fileId)
+            throws IOException, ParseException {
+        this.opener = opener;
+        this.latenessMillis = latenessMillis;
+        this.spillFolder = spillFolder;
+        this.fileId = fileId;
+        collectLateLogs();
+        this.buffer = new ReorderBuffer(opener.open());
+        for(Run run : runs) {
+            if(run.advance()) {
+                heads.add(run);
+            }
+        }
+    }
+
+    /**
+     * First pass over the file, the late logs are sorted into runs
+     */
+    private void collectLateLogs() throws IOException, ParseException {
+        List<Entry> late = new ArrayList<>();
+        try(ReorderBuffer pass = new ReorderBuffer(opener.open())) {
+            Entry entry = pass.poll();
+            while(entry != null) {
+                if(entry.late) {
+                    late.add(entry);
+                    lateLogs++;
+                    if(late.size() == RUN_SIZE) {
+                        spill(late);
+                        late.clear();
+                    }
+                }
+                entry = pass.poll();
+            }
+        }
+        if(!late.isEmpty()) {
+            late.sort(ReorderingLogSource::compare);
+            runs.add(new Run(late.iterator(), null));
+        }
+    }
+
+    private void spill(List<Entry> late) throws IOException {
+        late.sort(ReorderingLogSource::compare);
+        spillFolder.mkdirs();
+        File f = File.createTempFile("run-" + fileId + "-", ".run", spillFolder);
+        runFiles.add(f);
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)))) {
+            for(Entry entry : late) {
+                out.writeLong(entry.position);
+                out.writeLong(entry.log.getTimestamp());
+                out.writeInt(entry.log.getProcessId());
+                out.writeLong(entry.log.getThreadId());
+                writeText(out, entry.log.getThreadName());
+                writeText(out, entry.log.getLogStatement());
+            }
+        }
+        runs.add(new Run(null, new DataInputStream(new BufferedInputStream(new FileInputStream(f)))));
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the earliest of the next log released by the buffer and the heads of the runs. The late logs released
+     * by the buffer are skipped, they are returned from the runs.
+     */
+    @Override
+    public LogLine next() throws IOException, ParseException {
+        Entry entry = buffer.peek();
+        while(entry != null && entry.late) {
+            buffer.poll();
+            entry = buffer.peek();
+        }
+        Run run = heads.peek();
+        if(run != null && (entry == null || compare(run.head, entry) < 0)) {
+            heads.poll();
+            LogLine log = run.head.log;
+            if(run.advance()) {
+                heads.add(run);
+            }
+            return log;
+        }
+        return entry == null ? null : buffer.poll().log;
+    }
+
+    /**
+     * Getter for the number of logs which were too late for the buffer
+     * @return number of logs returned from the runs
+     */
+    public long getLateLogs() {
+        return lateLogs;
+    }
+
+    /**
+     * Getter for the number of runs spilled to disk
+     * @return number of run files
+     */
+    public int getSpilledRuns() {
+        return runFiles.size();
+    }
+
+    /**
+     * Closes the Log file and deletes the runs
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.close();
+        for(Run run : runs) {
+            run.close();
+        }
+        for(File f : runFiles) {
+            f.delete();
+        }
+    }
+
+    private static int compare(Entry o1, Entry o2) {
+        int c = Long.compare(o1.log.getTimestamp(), o2.log.getTimestamp());
+        return c != 0 ? c : Long.compare(o1.position, o2.position);
+    }
+
+    /**
+     * A log with its position among the logs of the file
+     */
+    private static class Entry {
+        final LogLine log;
+        final long position;
+        /**
+         * Released by the buffer after a later log
+         */
+        boolean late;
+
+        Entry(LogLine log, long position) {
+            this.log = log;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Heap of the logs read ahead of the log which is released next. Both passes make the same decisions, since they
+     * only depend on the logs of the file.
+     */
+    private class ReorderBuffer implements Closeable {
+        private final LogSource source;
+        private final PriorityQueue<Entry> heap = new PriorityQueue<>(ReorderingLogSource::compare);
+        private long position = 0;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private long released = Long.MIN_VALUE;
+        private boolean exhausted = false;
+
+        ReorderBuffer(LogSource source) {
+            this.source = source;
+        }
+
+        /**
+         * Returns the next log to be released without releasing it
+         */
+        Entry peek() throws IOException, ParseException {
+            //A log is released once it is older than the watermark, or the buffer is full
+            while(!exhausted && (heap.isEmpty() || heap.size() < MAX_BUFFERED
+                    && heap.peek().log.getTimestamp() > maxTimestamp - latenessMillis)) {
+                LogLine log = source.next();
+                if(log == null) {
+                    exhausted = true;
+                }
+                else {
+                    heap.add(new Entry(log, position++));
+                    maxTimestamp = Math.max(maxTimestamp, log.getTimestamp());
+                }
+            }
+            Entry entry = heap.peek();
+            if(entry != null) {
+                entry.late = entry.log.getTimestamp() < released;
+            }
+            return entry;
+        }
+
+        Entry poll() throws IOException, ParseException {
+            Entry entry = peek();
+            if(entry != null) {
+                heap.poll();
+                if(!entry.late) {
+                    released = entry.log.getTimestamp();
+                }
+            }
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+    }
+
+    /**
+     * Sorted run of late logs, read from memory or from its file
+     */
+    private class Run implements Closeable {
+        private final Iterator<Entry> entries;
+        private final DataInputStream in;
+        private Entry head;
+
+        Run(Iterator<Entry> entries, DataInputStream in) {
+            this.entries = entries;
+            this.in = in;
+        }
+
+        /**
+         * Moves to the next log of the run
+         * @return false once the run is exhausted
+         */
+        boolean advance() throws IOException {
+            if(entries != null) {
+                head = entries.hasNext() ? entries.next() : null;
+                return head != null;
+            }
+            try {
+                long position = in.readLong();
+                long timestamp = in.readLong();
+                int processId = in.readInt();
+                long threadId = in.readLong();
+                String threadName = readText(in);
+                head = new Entry(new LogLine(processId, threadId, threadName, timestamp, readText(in), fileId),
+                        position);
+                return true;
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if(in != null) {
+                in.close();
+            }
+        }
+    }
+}
@@ -2,73 +2,276 @@ package yashdoshi.eightfoldchallenge;
 
 import java.io.*;
 import java.net.URISyntaxException;
-import java.sql.Timestamp;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 
 /**
  * SanitizeFiles Class is used to Sanitize the Log files, by maintaining separate files for each threadID in a
  * sanitizedLogs folder. Along with sanitization, the maximum concurrent threads for any second is calculated, as all
- * the logs are traversed and stored in a Txt file.
+ * the logs are traversed and stored in a Txt file. The concurrent threads of every second are stored in a CSV series.
  * Original Log Files : Logs/AssignmentLogDump
  * Sanitized file path : Logs/sanitizedLogs
+ * Segment store path (--segments) : Logs/segmentStore
+ * Time partitions path (--partitions) : Logs/partitions
+ * Compressed sanitized files path (--compress) : Logs/compressedLogs
+ * Full text index (--fulltext) : Logs/fulltext.idx
+ * Concurrency timeline : Logs/concurrency.idx
  * BonusAPI part 1 result : Logs/BonusAPI-Part1.txt
+ * BonusAPI part 1 series : Logs/BonusAPI-Part1-series.csv
  */
 public class SanitizeFiles {
     private static String logFilesPath = "Resources/AssignmentLogDump";
     private static String sanitzedLogFilesPath = "Resources/sanitizedLogs";
-    private static int maxConcurrentThreads = 0;
-    private static HashSet<String> threads = new HashSet<>();
-    private static Timestamp t = null;
-    private static Timestamp epoch = null;
+    private static String seriesPath = "Resources/BonusAPI-Part1-series.csv";
+    /**
+     * Number of busiest seconds in the BonusAPI part 1 result
+     */
+    private static final int TOP_SECONDS = 10;
+    private static ConcurrencyTracker concurrency;
+    /**
+     * Log files are read from memory mapped windows instead of BufferedReaders
+     */
+    private static boolean useMappedFiles = false;
+    /**
+     * Number of threads writing the sanitized files, the logs are written on the merge thread if it is 1
+     */
+    private static int shards = 1;
+    /**
+     * The sanitized logs are appended to a SegmentStore instead of a file per thread/user-request
+     */
+    private static boolean useSegments = false;
+    private static String segmentStorePath = "Resources/segmentStore";
+    /**
+     * Length of a time partition, 0 to write the sanitized logs without partitions
+     */
+    private static long partitionMillis = 0;
+    /**
+     * Time of the latest logs kept in the partitions, 0 to keep every partition
+     */
+    private static long retentionMillis = 0;
+    private static String partitionsPath = "Resources/partitions";
+    /**
+     * The sanitized logs are written as compressed blocks by the CompressedLogWriter
+     */
+    private static boolean compress = false;
+    private static String compressedLogFilesPath = "Resources/compressedLogs";
+    /**
+     * An inverted index of the log statements is built while the logs are merged
+     */
+    private static boolean fullText = false;
+    private static String fullTextPath = "Resources/fulltext.idx";
+    private static TimePartitions partitions;
+    private static SanitizedLogWriter writerPool;
+    private static List<LogListener> listeners = new ArrayList<>();
+    private static String checkpointPath = "Resources/sanitize.checkpoint";
+    private static String intervalsPath = "Resources/intervals.idx";
+    private static String timelinePath = "Resources/concurrency.idx";
+    /**
+     * Time in millis in between two polls of the Log files in the follow mode, 0 to sanitize the files once
+     */
+    private static long followMillis = 0;
+    /**
+     * Time in seconds in between two progress lines of a sanitization, 0 for no progress line
+     */
+    private static long progressSeconds = 5;
+    /**
+     * Log files are reordered on the timestamp with a buffer of this lateness in millis, -1 if they are sorted
+     */
+    private static long reorderMillis = -1;
+    private static String reorderRunsPath = "Resources/reorderRuns";
+    /**
+     * Number of threads reading the Log files ahead of the merge, 0 to read them on the merge thread
+     */
+    private static int readAheadThreads = 0;
 
     /**
      * The main method begins by creating a Separate folder to maintain Sanitized log files and then calls the
      * method to read them. It also calls the method to return the maximum concurrent threads for any second.
-     * @param args No parameters required
+     * @param args --mapped to read the Log files from memory mapped windows, --shards=N to write the sanitized files
+     *             on N threads (--shards alone uses the number of cores), --follow[=millis] to keep following the Log
+     *             files for new logs, --segments to write the sanitized logs to a SegmentStore, --partitions[=minutes]
+     *             to bucket the sanitized logs and intervals into time partitions (hourly by default) and
+     *             --retain=hours to drop the partitions older than the latest hours of logs, --compress to write the
+     *             sanitized logs as compressed blocks, --fulltext to build the inverted index of the log statements,
+     *             --progress=seconds to print the progress every few seconds (every 5 seconds by default, 0 for none),
+     *             --reorder[=millis] for Log files which are not sorted on the timestamp, logs late by up to millis
+     *             (1000 by default) are reordered in memory and the later ones with sorted runs spilled to disk,
+     *             --readAhead[=N] to read and parse the Log files ahead of the merge on N threads (--readAhead alone
+     *             uses the number of cores)
      * @throws IOException In case there is an issue while reading, writing and searching file/directory operations.
      * @throws ParseException Parsing the string(Log) in a particular format especially for the Date could create an
      * issue.
      */
     public static void main(String[] args) throws IOException, ParseException, URISyntaxException {
+        for(String arg : args) {
+            if(arg.equals("--mapped")) {
+                useMappedFiles = true;
+            }
+            else if(arg.equals("--shards")) {
+                shards = Runtime.getRuntime().availableProcessors();
+            }
+            else if(arg.startsWith("--shards=")) {
+                shards = Math.max(1, Integer.parseInt(arg.substring("--shards=".length())));
+            }
+            else if(arg.equals("--follow")) {
+                followMillis = 1000;
+            }
+            else if(arg.startsWith("--follow=")) {
+                followMillis = Math.max(1, Long.parseLong(arg.substring("--follow=".length())));
+            }
+            else if(arg.equals("--segments")) {
+                useSegments = true;
+            }
+            else if(arg.equals("--partitions")) {
+                partitionMillis = TimePartitions.HOUR;
+            }
+            else if(arg.startsWith("--partitions=")) {
+                partitionMillis = Math.max(1, Long.parseLong(arg.substring("--partitions=".length()))) * 60000;
+            }
+            else if(arg.equals("--fulltext")) {
+                fullText = true;
+            }
+            else if(arg.equals("--compress")) {
+                compress = true;
+            }
+            else if(arg.startsWith("--progress=")) {
+                progressSeconds = Math.max(0, Long.parseLong(arg.substring("--progress=".length())));
+            }
+            else if(arg.equals("--reorder")) {
+                reorderMillis = 1000;
+            }
+            else if(arg.startsWith("--reorder=")) {
+                reorderMillis = Math.max(0, Long.parseLong(arg.substring("--reorder=".length())));
+            }
+            else if(arg.equals("--readAhead")) {
+                readAheadThreads = Runtime.getRuntime().availableProcessors();
+            }
+            else if(arg.startsWith("--readAhead=")) {
+                readAheadThreads = Math.max(0, Integer.parseInt(arg.substring("--readAhead=".length())));
+            }
+            else if(arg.startsWith("--retain=")) {
+                retentionMillis = Long.parseLong(arg.substring("--retain=".length())) * TimePartitions.HOUR;
+            }
+        }
         //Creating a File object
 
-        File file = new File(sanitzedLogFilesPath);
+        File file = new File(getSanitizedPath());
         //Creating the directory
         file.mkdir();
+        if(followMillis > 0) {
+            follow(followMillis);
+            return;
+        }
         System.out.println("***********Sanitizing Files***********");
-        readLogFiles();
+        CompressedLogWriter.resetStats();
+        PipelineMetrics.register();
+        PipelineMetrics.start();
+        if(progressSeconds > 0) {
+            PipelineMetrics.startProgress(progressSeconds);
+        }
+        long begin = System.nanoTime();
+        try {
+            readLogFiles();
+        } finally {
+            PipelineMetrics.stopProgress();
+        }
         System.out.println("***********Files are Sanitized***********");
+        System.out.println(PipelineMetrics.getProgress());
+        if(compress) {
+            System.out.println(CompressedLogWriter.getSummary(System.nanoTime() - begin));
+        }
+        if(partitions != null && retentionMillis > 0) {
+            System.out.println("Dropped " + partitions.retain(retentionMillis) + " partitions older than "
+                    + retentionMillis / TimePartitions.HOUR + " hours");
+        }
         getMaximumConcurrentThreads();
     }
 
     /**
-     * This method creates a BufferReader array for the number of Log files present in the AssignmentLogDump for the
-     * purpose of reading them simultaneously.
+     * This method creates a LogSource array for the number of Log files present in the AssignmentLogDump for the
+     * purpose of reading them simultaneously. The sources read the files either with a BufferedReader or from memory
+     * mapped windows. With --readAhead every source is read ahead of the merge by a ReadAheadLogSource.
      * @throws IOException
      * @throws ParseException
      */
     public static void readLogFiles() throws IOException, ParseException, URISyntaxException {
 
-        int numberOfLogFiles =  new File(logFilesPath).list().length;
-        BufferedReader[] fileReader = null;
+        List<LogSource> fileReader = new ArrayList<>();
+        //Size of every file when it was opened, these offsets are the checkpoint for the follow mode
+        Map<String, Long> offsets = new HashMap<>();
+        new File(getSanitizedPath()).mkdirs();
+        //The producers of all the Log files share the pool
+        ExecutorService readAhead = readAheadThreads > 0 ? ReadAheadLogSource.createPool(readAheadThreads) : null;
         try {
-            fileReader = new BufferedReader[numberOfLogFiles];
             File folder = new File(logFilesPath);
             File[] listOfFiles = folder.listFiles();
-            int i = 0;
+            //The order of the files breaks the ties in between logs with the same timestamp
+            Arrays.sort(listOfFiles);
             for(File f : listOfFiles) {
                 if(!f.isDirectory()) {
-                    fileReader[i] = new BufferedReader(new FileReader(f));
+                    int fileId = fileReader.size();
+                    offsets.put(f.getName(), f.length());
+                    PipelineMetrics.fileOpened();
+                    ReorderingLogSource.Opener opener = () -> useMappedFiles ? new MappedLogSource(f, fileId)
+                            : new TextLogSource(f, fileId);
+                    LogSource source;
+                    if(reorderMillis < 0) {
+                        source = opener.open();
+                    }
+                    else {
+                        //The file is read once here for its late logs, and once more by the merge
+                        ReorderingLogSource reordering = new ReorderingLogSource(opener, reorderMillis,
+                                new File(reorderRunsPath), fileId);
+                        if(reordering.getLateLogs() > 0) {
+                            System.out.println("Reordering " + f.getName() + " : " + reordering.getLateLogs()
+                                    + " logs later than " + reorderMillis + " ms, " + reordering.getSpilledRuns()
+                                    + " runs spilled");
+                        }
+                        source = reordering;
+                    }
+                    fileReader.add(readAhead == null ? source : new ReadAheadLogSource(source, readAhead));
                 }
-                i++;
             }
-            mergeKFiles(fileReader);
+            //The intervals are written into a sidecar for BasicAPI, along with the sanitized files
+            IntervalRecorder recorder = new IntervalRecorder();
+            concurrency = new ConcurrencyTracker(new File(seriesPath), false, TOP_SECONDS);
+            //The concurrent threads of every second are kept for the range queries of BasicAPI
+            ConcurrencyTimeline timeline = new ConcurrencyTimeline();
+            FullTextIndex fullTextIndex = fullText ? new FullTextIndex() : null;
+            addListener(recorder);
+            addListener(concurrency);
+            addListener(timeline);
+            if(fullTextIndex != null) {
+                addListener(fullTextIndex);
+            }
+            try {
+                mergeKFiles(fileReader.toArray(new LogSource[0]));
+            } finally {
+                listeners.remove(recorder);
+                listeners.remove(concurrency);
+                listeners.remove(timeline);
+                listeners.remove(fullTextIndex);
+            }
+            if(fullTextIndex != null) {
+                fullTextIndex.write(new File(fullTextPath));
+                System.out.println("Indexed " + fullTextIndex.size() + " logs with " + fullTextIndex.getTermCount()
+                        + " terms into " + fullTextPath);
+            }
+            concurrency.finish();
+            timeline.write(new File(timelinePath), IntervalSidecar.fingerprint(new File(getSanitizedPath())));
+            recorder.write(new File(intervalsPath), new File(getSanitizedPath()));
+            if(partitions != null) {
+                partitions.writeIntervals(recorder.getIntervals());
+            }
+            LogFollower.writeCheckpoint(checkpointPath, logFilesPath, offsets);
         } finally {
             //Close all the streams
-            for(int j = 0; j < fileReader.length; j++) {
-                fileReader[j].close();
+            for(LogSource source : fileReader) {
+                source.close();
+            }
+            if(readAhead != null) {
+                readAhead.shutdown();
             }
         }
 
@@ -76,152 +279,306 @@ public class SanitizeFiles {
     }
 
     /**
-     * This method is used to read all the Log files simultaneously and puts the logs in the Priority Queue based on
-     * their timestamp. While the queue != empty, It will poll the log and write it into it's corresponding
-     * thread/user-request file. It will then provide the next log from the file it was polled from.
-     * @param fileReader Array of BufferedReaders for every Log file
+     * This method is used to read all the Log files simultaneously and merges the logs on their timestamp with a
+     * LoserTree over the files. While there are logs left, It will poll the earliest log and write it into it's
+     * corresponding thread/user-request file. The tree then provides the next log from the file it was polled from.
+     * The time taken by the parsing, the merge and the writing is added to the PipelineMetrics every few thousand logs.
+     * @param fileReader Array of LogSources for every Log file
      * @throws IOException
      * @throws ParseException
      */
-    private static void mergeKFiles(BufferedReader[] fileReader) throws IOException, ParseException {
+    private static void mergeKFiles(LogSource[] fileReader) throws IOException, ParseException {
         if(fileReader == null || fileReader.length == 0) {
             return;
         }
-        //Custom Comparator for Timestamp
-        PriorityQueue<LogLine> pq = new PriorityQueue<>((o1, o2) -> {
-            Timestamp t1 = o1.getTimestamp();
-            Timestamp t2 = o2.getTimestamp();
-            if(t1.before(t2)) {
-                return -1;
+        //Offer the 1st log of all the Log files, logs with the same timestamp are taken in the order of the files
+        LoserTree tree = new LoserTree(fileReader);
+
+        writerPool = createWriter();
+        long logs = 0;
+        long pollNanos = 0;
+        long writeNanos = 0;
+        long reportedParseNanos = 0;
+        try {
+            long polled = System.nanoTime();
+            LogLine fileLog = tree.poll();
+            long time = System.nanoTime();
+            pollNanos += time - polled;
+            while(fileLog != null) {
+                processLog(fileLog);
+                polled = System.nanoTime();
+                writeNanos += polled - time;
+                fileLog = tree.poll();
+                time = System.nanoTime();
+                pollNanos += time - polled;
+                if(++logs == 4096) {
+                    long parseNanos = tree.getParseNanos();
+                    PipelineMetrics.logsMerged(logs, parseNanos - reportedParseNanos, pollNanos, writeNanos,
+                            tree.getLiveSources());
+                    reportedParseNanos = parseNanos;
+                    logs = 0;
+                    pollNanos = 0;
+                    writeNanos = 0;
+                }
             }
-            else if(t1.after(t2)) {
-                return 1;
+        } finally {
+            PipelineMetrics.logsMerged(logs, tree.getParseNanos() - reportedParseNanos, pollNanos, writeNanos,
+                    tree.getLiveSources());
+            //Flush the batched logs and close the open thread/user-request files
+            writerPool.close();
+        }
+    }
+
+    /**
+     * This method writes a list of logs, which is already sorted on the timestamp, to the sanitized files. It is used
+     * by the follow mode for the new logs of every poll.
+     * @param logs sorted logs
+     * @throws IOException
+     */
+    static void writeLogs(List<LogLine> logs) throws IOException {
+        writerPool = createWriter();
+        try {
+            for(LogLine log : logs) {
+                processLog(log);
+            }
+            concurrency.finish();
+        } finally {
+            writerPool.close();
+        }
+    }
+
+    /**
+     * This method follows the Log files, the new logs are sanitized every pollMillis until the thread is interrupted.
+     * The follow mode starts from the offsets of the checkpoint, which is written after every poll. The interval
+     * sidecar and the concurrency timeline are kept up to date as well, unless they were already missing or stale when
+     * the follow mode started. A timeline which cannot be kept up to date is deleted, so BasicAPI reports that there
+     * is no timeline instead of counting no threads for the new logs.
+     * @param pollMillis time in between two polls of the Log files
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static void follow(long pollMillis) throws IOException, ParseException {
+        new File(getSanitizedPath()).mkdir();
+        PipelineMetrics.register();
+        concurrency = new ConcurrencyTracker(new File(seriesPath), true, TOP_SECONDS);
+        addListener(concurrency);
+        LogFollower follower = new LogFollower(logFilesPath, checkpointPath);
+        File sidecar = new File(intervalsPath);
+        File sanitizedFolder = new File(getSanitizedPath());
+        IntervalStore intervals = IntervalSidecar.readStore(sidecar, IntervalSidecar.fingerprint(sanitizedFolder));
+        IntervalRecorder recorder = null;
+        if(intervals == null) {
+            System.out.println("Interval sidecar is missing or stale, BasicAPI will read the sanitized files");
+        }
+        else {
+            recorder = new IntervalRecorder(intervals);
+            addListener(recorder);
+        }
+        File timelineFile = new File(timelinePath);
+        ConcurrencyTimeline timeline = ConcurrencyTimeline.read(timelineFile,
+                IntervalSidecar.fingerprint(sanitizedFolder));
+        if(timeline == null) {
+            if(timelineFile.delete()) {
+                System.out.println("Concurrency timeline is stale and was deleted, run SanitizeFiles to write it"
+                        + " again");
             }
-            return 0;
-        });
-        //Offer the 1st log of all the Log files
-        for(int i = 0; i < fileReader.length; i++) {
-            String s = fileReader[i].readLine();
-            if(s != null) {
-                pq.offer(createLog(s, i));
+        }
+        else {
+            addListener(timeline);
+        }
+        System.out.println("***********Following Files***********");
+        try {
+            while(!Thread.currentThread().isInterrupted()) {
+                int count = follower.poll();
+                if(count > 0) {
+                    if(recorder != null) {
+                        recorder.write(sidecar, sanitizedFolder);
+                        if(partitions != null) {
+                            partitions.writeIntervals(recorder.getIntervals());
+                            if(retentionMillis > 0) {
+                                partitions.retain(retentionMillis);
+                            }
+                        }
+                    }
+                    if(timeline != null) {
+                        timeline.write(timelineFile, IntervalSidecar.fingerprint(sanitizedFolder));
+                    }
+                    getMaximumConcurrentThreads();
+                    System.out.println("Sanitized " + count + " new logs");
+                }
+                Thread.sleep(pollMillis);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
-        while(!pq.isEmpty()) {
-            LogLine fileLog = pq.poll();
+    /**
+     * This method changes the folders the Log files are read from and the sanitized files, the checkpoint and the
+     * results are written to. It is used to sanitize other dumps, such as the dumps of the LogDumpGenerator.
+     * @param logFolderPath folder of the Log files
+     * @param resourcesPath folder for the sanitizedLogs folder, the checkpoint, the sidecar and the series
+     */
+    public static void setPaths(String logFolderPath, String resourcesPath) {
+        logFilesPath = logFolderPath;
+        sanitzedLogFilesPath = resourcesPath + "/sanitizedLogs";
+        segmentStorePath = resourcesPath + "/segmentStore";
+        partitionsPath = resourcesPath + "/partitions";
+        compressedLogFilesPath = resourcesPath + "/compressedLogs";
+        fullTextPath = resourcesPath + "/fulltext.idx";
+        partitions = null;
+        checkpointPath = resourcesPath + "/sanitize.checkpoint";
+        intervalsPath = resourcesPath + "/intervals.idx";
+        timelinePath = resourcesPath + "/concurrency.idx";
+        seriesPath = resourcesPath + "/BonusAPI-Part1-series.csv";
+    }
 
-            /**
-             * Since logs are picked in sorted order from all files, maxConcurrentThreads and epoch maintain the highest
-             * concurrent threads at a given second
-             */
-            if(t != null && !fileLog.getTimestamp().equals(t)) {
+    /**
+     * Setter for the mapped Log files and the number of shards writing the sanitized files
+     * @param mapped true to read the Log files from memory mapped windows
+     * @param shardCount number of threads writing the sanitized files
+     */
+    public static void setOptions(boolean mapped, int shardCount) {
+        useMappedFiles = mapped;
+        shards = Math.max(1, shardCount);
+    }
 
-                if(maxConcurrentThreads < threads.size()) {
-                    maxConcurrentThreads = threads.size();
-                    epoch = t;
-                }
-                t = fileLog.getTimestamp();
-                threads.clear();
+    /**
+     * Setter for the threads reading the Log files ahead of the merge
+     * @param threads number of threads of the read ahead pool, 0 to read the files on the merge thread
+     */
+    public static void setReadAhead(int threads) {
+        readAheadThreads = Math.max(0, threads);
+    }
 
-            }
-            else {
-                t = fileLog.getTimestamp();
-                threads.add(fileLog.getThreadId());
-            }
+    /**
+     * Setter for writing the sanitized logs to a SegmentStore
+     * @param segments true to append the logs to the segment store instead of a file per thread/user-request
+     */
+    public static void setSegments(boolean segments) {
+        useSegments = segments;
+    }
 
+    /**
+     * Setter for writing the sanitized logs as compressed blocks
+     * @param compressed true to write the logs with the CompressedLogWriter
+     */
+    public static void setCompress(boolean compressed) {
+        compress = compressed;
+    }
 
-            String s = fileReader[fileLog.getFileId()].readLine();
-            if(s != null) {
-                //Since logs Statements contain breaks, it has to be added to the previous log
-                while(s.indexOf("::") == -1) {
-                    fileLog.logStatement += "\n"+ s;
-                    s = fileReader[fileLog.getFileId()].readLine();
-                }
-                pq.offer(createLog(s, fileLog.getFileId()));
+    /**
+     * Setter for building the full text index while the logs are merged
+     * @param index true to build the inverted index of the log statements
+     */
+    public static void setFullText(boolean index) {
+        fullText = index;
+    }
+
+    /**
+     * Setter for the time partitions of the sanitized logs
+     * @param millis length of a time partition, 0 to write the sanitized logs without partitions
+     * @param retention time of the latest logs kept in the partitions, 0 to keep every partition
+     */
+    public static void setPartitions(long millis, long retention) {
+        partitionMillis = millis;
+        retentionMillis = retention;
+        partitions = null;
+    }
+
+    /**
+     * Getter for the folder the sanitized logs are written to
+     * @return folder of the partitions with --partitions, of the segment store with --segments, of the compressed
+     * files with --compress, otherwise the folder of the sanitized files
+     */
+    public static String getSanitizedPath() {
+        if(partitionMillis > 0) {
+            return partitionsPath;
+        }
+        if(useSegments) {
+            return segmentStorePath;
+        }
+        return compress ? compressedLogFilesPath : sanitzedLogFilesPath;
+    }
+
+    /**
+     * Adds a listener which is called for every log, in the order the logs are merged
+     * @param listener LogListener to be called
+     */
+    public static void addListener(LogListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * This method processes a single log polled from the merge. It calls the listeners, one of which sweeps the
+     * concurrent threads, and writes the log to its thread/user-request file.
+     * @param fileLog log polled from the merge
+     * @throws IOException
+     */
+    private static void processLog(LogLine fileLog) throws IOException {
+        for(LogListener listener : listeners) {
+            listener.onLog(fileLog);
+        }
+        writeToFile(fileLog);
+    }
+
+    private static SanitizedLogWriter createWriter() throws IOException {
+        if(partitionMillis > 0) {
+            if(partitions == null) {
+                partitions = new TimePartitions(partitionsPath, partitionMillis);
             }
-            writeToFile(fileLog);
+            return partitions.createWriter();
+        }
+        if(useSegments) {
+            SegmentStore store = SegmentStore.open(segmentStorePath);
+            return shards > 1 ? new ShardedLogWriter(shards, () -> new SegmentLogWriter(store))
+                    : new SegmentLogWriter(store);
+        }
+        if(compress) {
+            return shards > 1 ? new ShardedLogWriter(shards, () -> new CompressedLogWriter(compressedLogFilesPath))
+                    : new CompressedLogWriter(compressedLogFilesPath);
         }
+        return shards > 1 ? new ShardedLogWriter(sanitzedLogFilesPath, shards)
+                : new LogWriterPool(sanitzedLogFilesPath);
+    }
+
+    /**
+     * This method stores the state of the concurrent threads in the checkpoint, so the follow mode can continue
+     * counting them after a restart.
+     * @param checkpoint properties of the checkpoint
+     */
+    static void saveState(Properties checkpoint) {
+        concurrency.saveState(checkpoint);
     }
 
     /**
-     * Write each log to its corresponding thread/user-request file.
+     * This method restores the state of the concurrent threads from the checkpoint.
+     * @param checkpoint properties of the checkpoint
+     */
+    static void loadState(Properties checkpoint) {
+        concurrency.loadState(checkpoint);
+    }
+
+    /**
+     * Write each log to its corresponding thread/user-request file. The log is handed to the writer pool, which batches
+     * the logs of every thread and keeps the most recently used files open. With shards, the log is handed to the
+     * worker thread writing the files of its shard.
      * @param fileLog
      * @throws IOException
      */
     private static void writeToFile(LogLine fileLog) throws IOException {
-        String sanitizedFile = "Resources/sanitizedLogs/"+fileLog.getThreadId() + ".log";
-        File file = new File(sanitizedFile);
-        BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
-        //For every log to be on a new line
-        if(file.length() != 0) {
-            writer.append("\n");
-        }
-        String flushLog = getLog(fileLog);
-        writer.append(flushLog);
-        writer.close();
-
+        writerPool.write(fileLog);
     }
 
     /**
-     * This method is used to parse the Log polled from the Priority Queue. based on the delimiters provided.
-     * @param s  A single log provided by the readLine() of BufferedReader.
-     * @param fileId Id of the Log file from which the log was polled from the Priority Queue
-     * @return It returns a LogLine object
-     * @throws ParseException
-     */
-    private static LogLine createLog(String s, int fileId) throws ParseException {
-        int firstSplit = s.indexOf(':');
-        int secondSplit = s.indexOf("::");
-        int firstSpace = s.indexOf(' ');
-        int secondSpace = s.indexOf(' ',s.indexOf(' ')+1);
-        int lastSplit = s.indexOf('-', secondSpace+1);
-        int pId = Integer.parseInt(s.substring(0,firstSplit));
-        String threadId = s.substring(firstSplit+1,secondSplit);
-        String threadName = s.substring(secondSplit+2,firstSpace);
-        String logDate = s.substring(firstSpace+1, lastSplit-1);
-        //Given the logs have the particular Format of timestamp
-        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss,SSS");
-        Date parsedDate = dateFormat.parse(logDate);
-        Timestamp timestamp = new java.sql.Timestamp(parsedDate.getTime());
-
-        String logStatement = s.substring(lastSplit+1).trim();
-        LogLine logLine = new LogLine(pId,threadId,threadName,timestamp,logStatement,fileId);
-        return logLine;
-    }
-
-    /**
-     * This method is used to parse the LogLine object back to string to write to a file. StringBuffer is used as string
-     * concatenation is time consuming.
-     * @param fileLog The logLine object which is polled from the Priority Queue
-     * @return A string which is to be written to the corresponding Thread/user-request file
-     */
-    private static String getLog(LogLine fileLog) {
-        StringBuffer logLine = new StringBuffer();
-        int processId = fileLog.getProcessId();
-        String threadId = fileLog.getThreadId();
-        String threadName = fileLog.getThreadName();
-        Timestamp time = fileLog.getTimestamp();
-        String logStatement = fileLog.getLogStatement();
-        logLine.append(processId);
-        logLine.append(":");
-        logLine.append(threadId);
-        logLine.append("::");
-        logLine.append(threadName + " ");
-        logLine.append(time + " ");
-        logLine.append("- ");
-        logLine.append(logStatement);
-        return logLine.toString();
-    }
-
-    /**
-     * This method is used to write the output for the BonusAPI-Part1 to a file/
+     * This method is used to write the output for the BonusAPI-Part1 to a file, the highest count of concurrent threads
+     * in any second followed by the busiest seconds. The count for every second is in the series next to it.
      * @throws IOException
      */
     public static void getMaximumConcurrentThreads() throws IOException {
         File f = new File("Resources/BonusAPI-Part1.txt");
         BufferedWriter writer = new BufferedWriter(new FileWriter(f));
-        writer.append("Highest count of concurrent threads running in any second \n");
-        writer.append(epoch + "  :  " + maxConcurrentThreads);
+        concurrency.writeReport(writer);
         writer.close();
     }
 
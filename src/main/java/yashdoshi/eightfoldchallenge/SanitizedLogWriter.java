@@ -0,0 +1,18 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * SanitizedLogWriter interface writes the merged logs into their corresponding thread/user-request logs. The logs of a
+ * thread are written in the order they are passed to the writer.
+ */
+public interface SanitizedLogWriter extends Closeable {
+
+    /**
+     * Writes a single log after the previous logs of its thread
+     * @param log the log polled from the merge
+     * @throws IOException
+     */
+    void write(LogLine log) throws IOException;
+}
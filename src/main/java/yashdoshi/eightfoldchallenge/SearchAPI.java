@@ -0,0 +1,119 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.text.ParseException;
+import java.util.*;
+
+/**
+ * SearchAPI Class is used to find the threads/user-requests which logged a message, with the FullTextIndex written by
+ * SanitizeFiles --fulltext instead of reading all the sanitized files. A query is a list of terms and phrases, a
+ * phrase is quoted or joined by punctuation (en.wikipedia.org), and a log matches if it contains all of them. The
+ * query can be limited to a time range.
+ * The matching threads are written in the same format as Resources/BasicAPI.log, with the processes the thread logged
+ * the message on.
+ * Full text index path : Logs/fulltext.idx
+ * SearchAPI result : Logs/SearchAPI.log
+ * Usage : SearchAPI "<query>" ["t1" "t2"]
+ */
+public class SearchAPI {
+
+    private static final String fullTextIndexPath = "Resources/fulltext.idx";
+    private static final String sanitizedLogFilesPath = "Resources/sanitizedLogs";
+
+    /**
+     * The main method loads the index and writes the threads matching the query to Resources/SearchAPI.log.
+     * @param args query, optionally followed by the startTime(t1) and endTime(t2)
+     * @throws IOException In case there is an issue while reading the index or writing the result.
+     * @throws ParseException Parsing the timestamps could create an issue.
+     */
+    public static void main(String[] args) throws IOException, ParseException {
+        if(args.length != 1 && args.length != 3) {
+            System.out.println("Usage : SearchAPI \"<query>\" [\"t1\" \"t2\"]");
+            return;
+        }
+        FullTextIndex index = FullTextIndex.read(new File(fullTextIndexPath));
+        if(index == null) {
+            System.out.println("No full text index at " + fullTextIndexPath + ", run SanitizeFiles --fulltext first");
+            return;
+        }
+        long startTime = args.length == 3 ? LogParser.parseTimestamp(args[1]) : Long.MIN_VALUE;
+        long endTime = args.length == 3 ? LogParser.parseTimestamp(args[2]) : Long.MAX_VALUE;
+        File f = new File("Resources/SearchAPI.log");
+        try(BufferedWriter writer = new BufferedWriter(new FileWriter(f))) {
+            int threads = search(index, args[0], startTime, endTime, sanitizedLogFilesPath, writer);
+            System.out.println(threads + " threads matching " + args[0] + ", written to " + f);
+        }
+    }
+
+    /**
+     * This method splits a query into phrases. Quoted text is a single phrase, and every other word is a phrase of
+     * its tokens.
+     * @param query terms and quoted phrases separated by spaces
+     * @return tokens of every phrase
+     */
+    public static List<List<String>> parseQuery(String query) {
+        List<List<String>> phrases = new ArrayList<>();
+        int i = 0;
+        while(i < query.length()) {
+            char c = query.charAt(i);
+            if(Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int end;
+            if(c == '"') {
+                end = query.indexOf('"', i + 1);
+                end = end < 0 ? query.length() : end;
+                i++;
+            }
+            else {
+                end = i;
+                while(end < query.length() && !Character.isWhitespace(query.charAt(end))) {
+                    end++;
+                }
+            }
+            List<String> tokens = new ArrayList<>();
+            FullTextIndex.tokenize(query.substring(i, end), tokens);
+            if(!tokens.isEmpty()) {
+                phrases.add(tokens);
+            }
+            i = end + 1;
+        }
+        return phrases;
+    }
+
+    /**
+     * This method finds the threads/user-requests with a log matching the query in the time range, and writes them
+     * one thread per line.
+     * @param index full text index
+     * @param query terms and quoted phrases
+     * @param startTime start of the time range, inclusive
+     * @param endTime end of the time range, inclusive
+     * @param path reference to the folder of the user-request/thread files
+     * @param writer Writer the matching threads are written to
+     * @return number of matching threads
+     * @throws IOException
+     */
+    public static int search(FullTextIndex index, String query, long startTime, long endTime, String path,
+                             Writer writer) throws IOException {
+        //The processes every thread logged a matching log on, in the order of the first match
+        LinkedHashMap<Long, TreeSet<Integer>> threads = new LinkedHashMap<>();
+        index.query(parseQuery(query), startTime, endTime, (threadId, processId, timestamp) -> {
+            TreeSet<Integer> processes = threads.get(threadId);
+            if(processes == null) {
+                processes = new TreeSet<>();
+                threads.put(threadId, processes);
+            }
+            processes.add(processId);
+        });
+        for(Map.Entry<Long, TreeSet<Integer>> thread : threads.entrySet()) {
+            writer.append(thread.getKey() + ":" + thread.getValue() + " - "
+                    + BasicAPI.getLogReference(thread.getKey(), path, startTime, endTime));
+            writer.append("\n");
+        }
+        writer.append("Number of threads matching " + query + " in the time range "
+                + (startTime == Long.MIN_VALUE ? "-" : LogParser.formatTimestamp(startTime)) + " - "
+                + (endTime == Long.MAX_VALUE ? "-" : LogParser.formatTimestamp(endTime)) + " : " + threads.size());
+        return threads.size();
+    }
+}
@@ -0,0 +1,42 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.IOException;
+
+/**
+ * SegmentLogWriter class batches the logs of every thread the same way as the LogWriterPool, but appends the batches to
+ * a SegmentStore instead of a file per thread. The batches are larger, so the extents of a thread are fewer.
+ * Every shard has its own writer over the same store.
+ */
+public class SegmentLogWriter extends LogWriterPool {
+
+    private final SegmentStore store;
+
+    /**
+     * Creates a writer with batches of 64K bytes per thread and 16M bytes buffered in total
+     * @param store segment store the batches are appended to
+     */
+    public SegmentLogWriter(SegmentStore store) {
+        super(store.getFolder().getPath(), 1, 64 * 1024, 16 * 1024 * 1024, 1000);
+        this.store = store;
+    }
+
+    @Override
+    protected boolean hasLogs(long threadId) {
+        return store.hasLogs(threadId);
+    }
+
+    @Override
+    protected void writeBatch(long threadId, ByteBatch batch) throws IOException {
+        store.append(threadId, batch);
+    }
+
+    @Override
+    protected void flushWriters() throws IOException {
+        store.flush();
+    }
+
+    @Override
+    protected void closeWriters() throws IOException {
+        store.flush();
+    }
+}
@@ -0,0 +1,314 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * SegmentStore class keeps the sanitized logs of all the threads/user-requests in a few large segment files, instead
+ * of a file per thread. The batches of logs are appended one after the other to the active segment, and a new segment
+ * is started once it is full, so the store is only ever written sequentially.
+ * Every batch appended for a thread is an extent (segment, offset, length) of its logs. The extents are appended to
+ * the index file extents.idx as they are written, and the extents of a thread, in the order they were written, are
+ * the chain of its logs. Reading the chain gives the same bytes as the sanitized file of the thread.
+ * A store is opened once per folder in a JVM and shared, so the writers of the shards and the queries of the
+ * QueryServer see the same extents. Opening a store only reads its index, the records left after the last valid
+ * extent by a crash are cut off when the writer opens the index, as a reader may see the records of a live writer
+ * before their bytes.
+ * The index records are kept in memory until the segment is flushed and are only written after it, so an extent is
+ * never indexed before its bytes are in the segment file.
+ * Layout of a record of the index : threadId (long), segment (int), offset (long), length (int)
+ */
+public class SegmentStore implements Closeable {
+
+    public static final String INDEX_FILE = "extents.idx";
+    private static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+    private static final int RECORD_SIZE = 24;
+    private static final int INDEX_BUFFER_SIZE = 1 << 16;
+    private static final Map<String, SegmentStore> stores = new HashMap<>();
+
+    /**
+     * Extent of the logs of a thread in a segment
+     */
+    public static class Extent {
+        private final int segment;
+        private final long offset;
+        private final int length;
+
+        Extent(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Getter for the segment
+         * @return number of the segment file
+         */
+        public int getSegment() {
+            return segment;
+        }
+
+        /**
+         * Getter for the offset
+         * @return position of the first byte of the extent in the segment
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Getter for the length
+         * @return number of bytes of the extent
+         */
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private final File folder;
+    private final HashMap<Long, List<Extent>> chains = new HashMap<>();
+    private final List<FileChannel> readers = new ArrayList<>();
+    private int activeSegment;
+    private long activeSize;
+    /**
+     * Number of records of the index file up to the last valid extent, and the ones appended since
+     */
+    private long indexedRecords;
+    private OutputStream segmentWriter;
+    private OutputStream indexWriter;
+    /**
+     * Records of the extents appended since the segment was last flushed
+     */
+    private final ByteArrayOutputStream pendingIndex = new ByteArrayOutputStream(INDEX_BUFFER_SIZE);
+    private final DataOutputStream pendingRecords = new DataOutputStream(pendingIndex);
+
+    /**
+     * This method returns the store of the folder, the store is opened and its index is read the first time.
+     * @param folderPath folder of the segments and the index
+     * @return store of the folder
+     * @throws IOException
+     */
+    public static synchronized SegmentStore open(String folderPath) throws IOException {
+        String key = new File(folderPath).getCanonicalPath();
+        SegmentStore store = stores.get(key);
+        if(store == null) {
+            store = new SegmentStore(new File(key));
+            stores.put(key, store);
+        }
+        return store;
+    }
+
+    /**
+     * Checks if the folder holds a segment store
+     * @param folderPath folder to be checked
+     * @return true if the folder has the index of a store
+     */
+    public static boolean exists(String folderPath) {
+        return new File(folderPath, INDEX_FILE).isFile();
+    }
+
+    private SegmentStore(File folder) throws IOException {
+        this.folder = folder;
+        folder.mkdirs();
+        readIndex();
+    }
+
+    /**
+     * Reads the chains of all the threads from the index. Extents after the end of their segment, which were indexed
+     * but not written before a crash, are dropped along with every extent after them. The index file is not changed.
+     */
+    private void readIndex() throws IOException {
+        File index = new File(folder, INDEX_FILE);
+        long validRecords = 0;
+        if(index.exists()) {
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+                for(long i = 0; i < index.length() / RECORD_SIZE; i++) {
+                    long threadId = in.readLong();
+                    int segment = in.readInt();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    if(offset + length > getSegmentFile(segment).length()) {
+                        break;
+                    }
+                    List<Extent> chain = chains.get(threadId);
+                    if(chain == null) {
+                        chain = new ArrayList<>();
+                        chains.put(threadId, chain);
+                    }
+                    chain.add(new Extent(segment, offset, length));
+                    activeSegment = Math.max(activeSegment, segment);
+                    validRecords++;
+                }
+            }
+        }
+        indexedRecords = validRecords;
+        activeSize = getSegmentFile(activeSegment).length();
+    }
+
+    /**
+     * This method appends the batch of a thread to the active segment and adds the extent to the chain of the thread.
+     * @param threadId thread/user-request the batch belongs to
+     * @param batch batched logs of the thread
+     * @throws IOException
+     */
+    public synchronized void append(long threadId, ByteBatch batch) throws IOException {
+        if(batch.length() == 0) {
+            return;
+        }
+        if(activeSize > 0 && activeSize + batch.length() > SEGMENT_SIZE) {
+            //The segment is full, the next batches go to a new segment
+            closeWriters();
+            activeSegment++;
+            //A segment which was written but not indexed before a crash is appended to
+            activeSize = getSegmentFile(activeSegment).length();
+        }
+        if(segmentWriter == null) {
+            segmentWriter = new BufferedOutputStream(new FileOutputStream(getSegmentFile(activeSegment), true),
+                    1 << 20);
+            indexWriter = openIndex();
+        }
+        batch.writeTo(segmentWriter);
+        Extent extent = new Extent(activeSegment, activeSize, batch.length());
+        activeSize += batch.length();
+        pendingRecords.writeLong(threadId);
+        pendingRecords.writeInt(extent.segment);
+        pendingRecords.writeLong(extent.offset);
+        pendingRecords.writeInt(extent.length);
+        indexedRecords++;
+        if(pendingIndex.size() >= INDEX_BUFFER_SIZE) {
+            flush();
+        }
+        List<Extent> chain = chains.get(threadId);
+        if(chain == null) {
+            chain = new ArrayList<>();
+            chains.put(threadId, chain);
+        }
+        chain.add(extent);
+    }
+
+    /**
+     * Opens the index for the appends of the writer. The records after the last valid extent, left by a crash, are
+     * cut off first, so the appended records follow the valid ones.
+     */
+    private OutputStream openIndex() throws IOException {
+        File index = new File(folder, INDEX_FILE);
+        try(RandomAccessFile file = new RandomAccessFile(index, "rw")) {
+            if(file.length() > indexedRecords * RECORD_SIZE) {
+                file.setLength(indexedRecords * RECORD_SIZE);
+            }
+        }
+        return new FileOutputStream(index, true);
+    }
+
+    /**
+     * Checks if the store holds logs of the thread
+     * @param threadId thread/user-request id
+     * @return true if the chain of the thread is not empty
+     */
+    public synchronized boolean hasLogs(long threadId) {
+        return chains.containsKey(threadId);
+    }
+
+    /**
+     * Getter for the ids of all the threads in the store
+     * @return thread/user-request ids
+     */
+    public synchronized Set<Long> getThreadIds() {
+        return new HashSet<>(chains.keySet());
+    }
+
+    /**
+     * This method returns the handle to the logs of a thread, with the extents written so far.
+     * @param threadId thread/user-request id
+     * @return handle of the logs, null if the store has no logs of the thread
+     */
+    public synchronized LogHandle getHandle(long threadId) {
+        List<Extent> chain = chains.get(threadId);
+        return chain == null ? null : new LogHandle(this, threadId, new ArrayList<>(chain));
+    }
+
+    /**
+     * Reads an extent into the buffer with a positional read of its segment
+     * @param extent extent to be read
+     * @param buffer buffer with at least the length of the extent remaining
+     * @throws IOException
+     */
+    synchronized void read(Extent extent, ByteBuffer buffer) throws IOException {
+        if(segmentWriter != null && extent.segment == activeSegment) {
+            //The extent may still be in the buffer of the writer
+            segmentWriter.flush();
+        }
+        while(readers.size() <= extent.segment) {
+            readers.add(null);
+        }
+        FileChannel channel = readers.get(extent.segment);
+        if(channel == null) {
+            channel = new RandomAccessFile(getSegmentFile(extent.segment), "r").getChannel();
+            readers.set(extent.segment, channel);
+        }
+        int limit = buffer.position() + extent.length;
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(limit);
+        long position = extent.offset;
+        while(slice.hasRemaining()) {
+            int read = channel.read(slice, position);
+            if(read < 0) {
+                throw new EOFException("Extent after the end of segment " + extent.segment);
+            }
+            position += read;
+        }
+        buffer.position(limit);
+    }
+
+    /**
+     * Writes the buffered segment and index to the files, so the extents are there after a crash
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if(segmentWriter != null) {
+            //The segment is written before the index, an extent is never indexed before its bytes are written
+            segmentWriter.flush();
+            pendingIndex.writeTo(indexWriter);
+            pendingIndex.reset();
+        }
+    }
+
+    /**
+     * Closes the files of the store, it is opened again by the next append or read
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closeWriters();
+        for(FileChannel channel : readers) {
+            if(channel != null) {
+                channel.close();
+            }
+        }
+        readers.clear();
+    }
+
+    private void closeWriters() throws IOException {
+        if(segmentWriter != null) {
+            flush();
+            segmentWriter.close();
+            indexWriter.close();
+            segmentWriter = null;
+            indexWriter = null;
+        }
+    }
+
+    /**
+     * Getter for the folder of the store
+     * @return folder of the segments and the index
+     */
+    public File getFolder() {
+        return folder;
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(folder, String.format("segment-%06d.dat", segment));
+    }
+}
@@ -0,0 +1,160 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * ShardedLogWriter class writes the sanitized logs on several threads. The thread/user-request ids are partitioned
+ * into shards by their hash, and every shard has a worker thread with its own LogWriterPool, so a file is only ever
+ * written by a single worker.
+ * The merge hands the logs to the writer in their sorted order. They are dispatched in batches through a bounded queue
+ * per shard, and every worker writes its batches in the order they were queued, so the logs of a thread keep the
+ * order of the merge.
+ */
+public class ShardedLogWriter implements SanitizedLogWriter {
+
+    private static final int BATCH_SIZE = 256;
+    private static final int QUEUE_CAPACITY = 64;
+    /**
+     * An empty batch tells the worker that there are no more logs
+     */
+    private static final List<LogLine> END = new ArrayList<>();
+
+    private final List<BlockingQueue<List<LogLine>>> queues = new ArrayList<>();
+    private final List<List<LogLine>> batches = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile IOException failure;
+
+    /**
+     * Starts a worker thread for every shard
+     * @param folderPath folder where the thread/user-request files are written
+     * @param shards number of shards, usually the number of cores
+     */
+    public ShardedLogWriter(String folderPath, int shards) {
+        this(shards, () -> new LogWriterPool(folderPath));
+    }
+
+    /**
+     * Starts a worker thread for every shard, with the pool created for the shard
+     * @param shards number of shards, usually the number of cores
+     * @param pools creates the LogWriterPool of a shard
+     */
+    public ShardedLogWriter(int shards, Supplier<LogWriterPool> pools) {
+        for(int i = 0; i < shards; i++) {
+            BlockingQueue<List<LogLine>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            LogWriterPool pool = pools.get();
+            Thread worker = new Thread(() -> writeShard(queue, pool), "sanitize-shard-" + i);
+            queues.add(queue);
+            batches.add(new ArrayList<>(BATCH_SIZE));
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Adds the log to the batch of its shard, a full batch is handed to the worker of the shard. The merge waits if
+     * the worker is too far behind.
+     * @param log the log polled from the merge
+     * @throws IOException if a worker failed to write its logs
+     */
+    @Override
+    public void write(LogLine log) throws IOException {
+        checkFailure();
+        int shard = shardOf(log.getThreadId(), queues.size());
+        List<LogLine> batch = batches.get(shard);
+        batch.add(log);
+        if(batch.size() >= BATCH_SIZE) {
+            dispatch(shard, batch);
+            batches.set(shard, new ArrayList<>(BATCH_SIZE));
+        }
+    }
+
+    /**
+     * Hands the remaining batches to the workers and waits for every worker to write and close its files.
+     * @throws IOException if a worker failed to write its logs
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for(int shard = 0; shard < queues.size(); shard++) {
+                if(!batches.get(shard).isEmpty()) {
+                    dispatch(shard, batches.get(shard));
+                }
+                dispatch(shard, END);
+            }
+            for(Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shard writers", e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Shard of a thread/user-request id
+     * @param threadId thread/user-request id
+     * @param shards number of shards
+     * @return shard in the range [0, shards)
+     */
+    public static int shardOf(long threadId, int shards) {
+        long h = threadId * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 33) % shards);
+    }
+
+    private void dispatch(int shard, List<LogLine> batch) throws IOException {
+        try {
+            queues.get(shard).put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while dispatching the logs", e);
+        }
+    }
+
+    /**
+     * Worker loop of a shard, writes the batches until the end of the logs.
+     */
+    private void writeShard(BlockingQueue<List<LogLine>> queue, LogWriterPool pool) {
+        boolean ended = false;
+        try {
+            List<LogLine> batch = queue.take();
+            while(batch != END) {
+                for(LogLine log : batch) {
+                    pool.write(log);
+                }
+                batch = queue.take();
+            }
+            ended = true;
+            pool.close();
+        } catch (IOException e) {
+            failure = e;
+            //Keep taking the batches, so the merge is never blocked on a failed shard
+            if(!ended) {
+                drain(queue);
+            }
+        } catch (InterruptedException e) {
+            failure = new IOException("Shard writer was interrupted", e);
+        }
+    }
+
+    private static void drain(BlockingQueue<List<LogLine>> queue) {
+        try {
+            while(queue.take() != END) {
+                //The logs of a failed shard are dropped, the merge reports the failure
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if(failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.text.ParseException;
+
+/**
+ * TextLogSource class reads the logs of a Log file line by line with a BufferedReader.
+ */
+public class TextLogSource implements LogSource {
+
+    private final BufferedReader reader;
+    private final int fileId;
+    private final LogParser parser = new LogParser();
+    /**
+     * First line of the next log, which is read while looking for the end of the current log
+     */
+    private String nextLine;
+
+    /**
+     * @param f Log file
+     * @param fileId Id of the Log file, stored in every log read from it
+     * @throws IOException
+     */
+    public TextLogSource(File f, int fileId) throws IOException {
+        this.reader = new BufferedReader(new FileReader(f));
+        this.fileId = fileId;
+        this.nextLine = reader.readLine();
+    }
+
+    @Override
+    public LogLine next() throws IOException, ParseException {
+        //Lines before the first log of the file don't belong to any log
+        while(nextLine != null && !LogParser.isLogStart(nextLine)) {
+            nextLine = reader.readLine();
+        }
+        if(nextLine == null) {
+            return null;
+        }
+        String s = nextLine;
+        parser.parse(s);
+        String threadName = s.substring(parser.threadNameStart, parser.threadNameEnd);
+        String logStatement = s.substring(parser.statementStart, parser.statementEnd);
+
+        nextLine = reader.readLine();
+        //Since logs Statements contain breaks, they have to be added to the log
+        if(nextLine != null && !LogParser.isLogStart(nextLine)) {
+            StringBuilder statement = new StringBuilder(logStatement);
+            while(nextLine != null && !LogParser.isLogStart(nextLine)) {
+                statement.append('\n').append(nextLine);
+                nextLine = reader.readLine();
+            }
+            logStatement = statement.toString();
+        }
+        return new LogLine(parser.processId, parser.threadId, threadName, parser.timestamp, logStatement, fileId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,611 @@
+package yashdoshi.eightfoldchallenge;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * TimePartitions class buckets the sanitized logs and the intervals into time partitions, an hour each by default.
+ * Every partition is a folder named after its start time, e.g. 2020-08-09T18-00, holding the sanitized files of the
+ * logs in that hour, the sidecar of the intervals which start in that hour, the ids of the threads with logs in that
+ * hour and a partition.properties file with the minimum and maximum timestamp of its logs and the maximum end time of
+ * its intervals.
+ * Only the partitions which got new logs or whose intervals changed are written again, so the follow mode doesn't
+ * rewrite the older partitions on every poll.
+ * Retention drops whole partition folders, the rest of the data is never read or rewritten. A range query only loads
+ * the intervals of the partitions which can overlap the range, and keeps the indexes of the most recently queried
+ * partitions in memory.
+ * Layout : partitions/<start>/sanitizedLogs/<threadId>.log, partitions/<start>/intervals.idx,
+ * partitions/<start>/threads.idx, partitions/<start>/partition.properties
+ * Layout of threads.idx : number of threads (int), followed by the id (long) of every thread
+ */
+public class TimePartitions {
+
+    public static final String META_FILE = "partition.properties";
+    public static final String THREADS_FILE = "threads.idx";
+    public static final long HOUR = 60 * 60 * 1000L;
+    /**
+     * Number of partition indexes kept in memory for the range queries
+     */
+    private static final int MAX_LOADED = 16;
+
+    /**
+     * A single time partition, with the range of the timestamps it holds
+     */
+    public static class Partition {
+        private final File folder;
+        private final long start;
+        private final long end;
+        private long minTimestamp = Long.MAX_VALUE;
+        private long maxTimestamp = Long.MIN_VALUE;
+        private long intervalEnd = Long.MIN_VALUE;
+        private long logs;
+        private int intervals;
+        /**
+         * Number of intervals of the partition with an end time, -1 if it is not known
+         */
+        private int endedIntervals = -1;
+        /**
+         * Threads with logs written to the partition since threads.idx was written
+         */
+        private final LongHashSet newThreads = new LongHashSet();
+
+        Partition(File folder, long start, long end) {
+            this.folder = folder;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Getter for the start of the partition
+         * @return first millisecond of the partition
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Getter for the end of the partition
+         * @return millisecond after the last millisecond of the partition
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Getter for the earliest log
+         * @return timestamp of the earliest log, Long.MAX_VALUE if the partition has no logs
+         */
+        public long getMinTimestamp() {
+            return minTimestamp;
+        }
+
+        /**
+         * Getter for the latest log
+         * @return timestamp of the latest log, Long.MIN_VALUE if the partition has no logs
+         */
+        public long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+
+        /**
+         * Getter for the end of the intervals which start in the partition
+         * @return maximum end time of the intervals, Interval.OPEN if one of them has not ended
+         */
+        public long getIntervalEnd() {
+            return intervalEnd;
+        }
+
+        /**
+         * Getter for the number of logs
+         * @return number of logs written to the partition
+         */
+        public long getLogs() {
+            return logs;
+        }
+
+        /**
+         * Getter for the folder of the sanitized files
+         * @return folder of the sanitized files of the partition
+         */
+        public File getSanitizedFolder() {
+            return new File(folder, "sanitizedLogs");
+        }
+
+        /**
+         * Getter for the interval sidecar
+         * @return sidecar of the intervals which start in the partition
+         */
+        public File getIntervalsFile() {
+            return new File(folder, "intervals.idx");
+        }
+
+        /**
+         * Checks if an interval of the partition can be active in the time range. The intervals start in between the
+         * earliest and latest log of the partition and end before its interval end.
+         * @param startTime start time of the range
+         * @param endTime end time of the range
+         * @return false if no interval of the partition can be active in the range
+         */
+        public boolean overlaps(long startTime, long endTime) {
+            return intervals > 0 && minTimestamp < endTime && intervalEnd > startTime;
+        }
+
+        /**
+         * Checks if the partition has logs in the time range
+         * @param startTime start time of the range
+         * @param endTime end time of the range
+         * @return true if the earliest and latest log of the partition are around a part of the range
+         */
+        public boolean hasLogs(long startTime, long endTime) {
+            return logs > 0 && minTimestamp <= endTime && maxTimestamp >= startTime;
+        }
+
+        private void addLog(long timestamp, long threadId) {
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+            logs++;
+            newThreads.add(threadId);
+        }
+
+        /**
+         * Reads the ids of the threads with logs in the partition from threads.idx. A partition written before
+         * threads.idx existed has its sanitized folder listed instead.
+         */
+        private LongHashSet readThreads() throws IOException {
+            LongHashSet threads = new LongHashSet();
+            File f = new File(folder, THREADS_FILE);
+            if(f.isFile()) {
+                try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+                    for(int i = in.readInt(); i > 0; i--) {
+                        threads.add(in.readLong());
+                    }
+                }
+                return threads;
+            }
+            File[] listOfFiles = getSanitizedFolder().listFiles();
+            for(File file : listOfFiles == null ? new File[0] : listOfFiles) {
+                String name = file.getName();
+                if(name.endsWith(".log")) {
+                    try {
+                        threads.add(Long.parseLong(name.substring(0, name.length() - ".log".length())));
+                    } catch (NumberFormatException e) {
+                        //Not the file of a thread
+                    }
+                }
+            }
+            return threads;
+        }
+
+        /**
+         * Adds the threads with new logs to threads.idx, which is written to a temporary file first, the same way as
+         * partition.properties.
+         */
+        private void saveThreads() throws IOException {
+            if(newThreads.size() == 0) {
+                return;
+            }
+            LongHashSet threads = readThreads();
+            for(long threadId : newThreads.toArray()) {
+                threads.add(threadId);
+            }
+            File f = new File(folder, THREADS_FILE);
+            File temp = new File(folder, THREADS_FILE + ".tmp");
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(threads.size());
+                for(long threadId : threads.toArray()) {
+                    out.writeLong(threadId);
+                }
+            }
+            Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            newThreads.clear();
+        }
+
+        /**
+         * Writes the metadata to a temporary file which then replaces partition.properties, the same way as the
+         * checkpoint of SanitizeFiles.
+         */
+        private void save() throws IOException {
+            saveThreads();
+            Properties meta = new Properties();
+            meta.setProperty("start", String.valueOf(start));
+            meta.setProperty("end", String.valueOf(end));
+            meta.setProperty("minTimestamp", String.valueOf(minTimestamp));
+            meta.setProperty("maxTimestamp", String.valueOf(maxTimestamp));
+            meta.setProperty("intervalEnd", String.valueOf(intervalEnd));
+            meta.setProperty("logs", String.valueOf(logs));
+            meta.setProperty("intervals", String.valueOf(intervals));
+            meta.setProperty("endedIntervals", String.valueOf(endedIntervals));
+            File f = new File(folder, META_FILE);
+            File temp = new File(folder, META_FILE + ".tmp");
+            try(OutputStream out = new FileOutputStream(temp)) {
+                meta.store(out, "Time partition " + LogParser.formatTimestamp(start) + " - "
+                        + LogParser.formatTimestamp(end));
+            }
+            Files.move(temp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        private static Partition load(File folder) throws IOException {
+            Properties meta = new Properties();
+            try(InputStream in = new FileInputStream(new File(folder, META_FILE))) {
+                meta.load(in);
+            }
+            Partition partition = new Partition(folder, Long.parseLong(meta.getProperty("start")),
+                    Long.parseLong(meta.getProperty("end")));
+            partition.minTimestamp = Long.parseLong(meta.getProperty("minTimestamp"));
+            partition.maxTimestamp = Long.parseLong(meta.getProperty("maxTimestamp"));
+            partition.intervalEnd = Long.parseLong(meta.getProperty("intervalEnd"));
+            partition.logs = Long.parseLong(meta.getProperty("logs"));
+            partition.intervals = Integer.parseInt(meta.getProperty("intervals"));
+            partition.endedIntervals = Integer.parseInt(meta.getProperty("endedIntervals", "-1"));
+            return partition;
+        }
+    }
+
+    private final File folder;
+    private final long partitionMillis;
+    private final TreeMap<Long, Partition> partitions = new TreeMap<>();
+    /**
+     * Partitions with logs written since their intervals were last written
+     */
+    private final Set<Partition> logged = new HashSet<>();
+    /**
+     * Indexes of the queried partitions in the access order, the least recently queried index is dropped first
+     */
+    private final LinkedHashMap<Long, IntervalIndex> loaded = new LinkedHashMap<Long, IntervalIndex>(16, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, IntervalIndex> eldest) {
+            return size() > MAX_LOADED;
+        }
+    };
+    /**
+     * Threads of the queried partitions, in the access order the same as the indexes
+     */
+    private final LinkedHashMap<Long, LongHashSet> loadedThreads = new LinkedHashMap<Long, LongHashSet>(16, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, LongHashSet> eldest) {
+            return size() > MAX_LOADED;
+        }
+    };
+
+    /**
+     * Opens the partitions of the folder, only the metadata of the partitions is read.
+     * @param folderPath folder of the partitions
+     * @param partitionMillis length of a new partition, the existing partitions keep their length
+     * @throws IOException
+     */
+    public TimePartitions(String folderPath, long partitionMillis) throws IOException {
+        this.folder = new File(folderPath);
+        this.partitionMillis = partitionMillis;
+        folder.mkdirs();
+        File[] listOfFiles = folder.listFiles();
+        for(File f : listOfFiles) {
+            if(new File(f, META_FILE).isFile()) {
+                Partition partition = Partition.load(f);
+                partitions.put(partition.start, partition);
+            }
+        }
+    }
+
+    /**
+     * Checks if the folder holds time partitions
+     * @param folderPath folder to be checked
+     * @return true if the folder exists
+     */
+    public static boolean exists(String folderPath) {
+        return new File(folderPath).isDirectory();
+    }
+
+    /**
+     * Getter for the partitions
+     * @return partitions in the order of their start time
+     */
+    public synchronized List<Partition> getPartitions() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    /**
+     * This method returns the partition holding the timestamp. A partition which doesn't exist yet is created, it
+     * begins at the timestamp rounded down to the length of the partitions.
+     * @param timestamp timestamp of a log or the start of an interval
+     * @return partition of the timestamp
+     */
+    public synchronized Partition getPartition(long timestamp) {
+        Map.Entry<Long, Partition> floor = partitions.floorEntry(timestamp);
+        if(floor != null && timestamp < floor.getValue().end) {
+            return floor.getValue();
+        }
+        long start = Math.floorDiv(timestamp, partitionMillis) * partitionMillis;
+        long end = start + partitionMillis;
+        //A new partition never overlaps an existing partition of another length
+        if(floor != null) {
+            start = Math.max(start, floor.getValue().end);
+        }
+        Map.Entry<Long, Partition> ceiling = partitions.higherEntry(timestamp);
+        if(ceiling != null) {
+            end = Math.min(end, ceiling.getKey());
+        }
+        String name = LogParser.formatTimestamp(start).substring(0, 16).replace(' ', 'T').replace(':', '-');
+        if(start % 60000 != 0) {
+            name = name + "-" + (start % 60000);
+        }
+        Partition partition = new Partition(new File(folder, name), start, end);
+        partition.getSanitizedFolder().mkdirs();
+        partitions.put(start, partition);
+        return partition;
+    }
+
+    /**
+     * This method creates the writer of the sanitized logs, every log is written to the sanitized files of its
+     * partition. The metadata of the partitions is written when the writer is closed.
+     * @return writer of the partitioned logs
+     */
+    public SanitizedLogWriter createWriter() {
+        return new PartitionedLogWriter();
+    }
+
+    /**
+     * This method writes the sidecar and the metadata of the partitions which changed since they were last written.
+     * Every interval is written to the partition of its start time, the intervals of dropped partitions are left out.
+     * A partition changed if logs were written to it, which changes the fingerprint of its sanitized files, or if
+     * the number of its intervals or of its ended intervals is not the one it was written with, as intervals are only
+     * added or ended. The columns of the store are read to count the intervals, but only the changed partitions are
+     * written. The partition keeps the maximum end time of its intervals for pruning the range queries. It must be
+     * called after the writer of the sanitized logs is closed, as the sidecars hold the fingerprint of the sanitized
+     * files.
+     * @param intervals store of all the intervals
+     * @throws IOException
+     */
+    public synchronized void writeIntervals(IntervalStore intervals) throws IOException {
+        //Intervals and ended intervals of every partition
+        HashMap<Partition, int[]> counts = new HashMap<>();
+        for(Partition partition : partitions.values()) {
+            counts.put(partition, new int[2]);
+        }
+        Partition partition = null;
+        for(int slot = 0; slot < intervals.size(); slot++) {
+            partition = findPartition(intervals.getStartTime(slot), partition);
+            if(partition != null) {
+                int[] count = counts.get(partition);
+                count[0]++;
+                count[1] += intervals.hasEndTime(slot) ? 1 : 0;
+            }
+        }
+        HashMap<Partition, IntervalStore> changed = new HashMap<>();
+        for(Map.Entry<Partition, int[]> count : counts.entrySet()) {
+            Partition p = count.getKey();
+            if(logged.contains(p) || p.intervals != count.getValue()[0] || p.endedIntervals != count.getValue()[1]) {
+                changed.put(p, new IntervalStore(count.getValue()[0]));
+            }
+        }
+        partition = null;
+        for(int slot = 0; slot < intervals.size() && !changed.isEmpty(); slot++) {
+            partition = findPartition(intervals.getStartTime(slot), partition);
+            IntervalStore store = partition == null ? null : changed.get(partition);
+            if(store != null) {
+                store.add(intervals.getThreadId(slot), intervals.getProcessId(slot), intervals.getStartTime(slot),
+                        intervals.getEndTime(slot), intervals.getThreadName(slot));
+            }
+        }
+        for(Map.Entry<Partition, IntervalStore> entry : changed.entrySet()) {
+            Partition p = entry.getKey();
+            IntervalStore store = entry.getValue();
+            p.intervals = store.size();
+            p.endedIntervals = counts.get(p)[1];
+            p.intervalEnd = Long.MIN_VALUE;
+            for(int slot = 0; slot < store.size(); slot++) {
+                p.minTimestamp = Math.min(p.minTimestamp, store.getStartTime(slot));
+                p.intervalEnd = Math.max(p.intervalEnd, store.getEndTime(slot));
+            }
+            IntervalSidecar.write(p.getIntervalsFile(), store, IntervalSidecar.fingerprint(p.getSanitizedFolder()));
+            p.save();
+            loaded.remove(p.start);
+            loadedThreads.remove(p.start);
+        }
+        logged.clear();
+    }
+
+    /**
+     * Returns the partition holding the timestamp, null if it was dropped. The intervals are mostly in the order of
+     * their start time, so the partition of the previous interval is tried first.
+     */
+    private Partition findPartition(long timestamp, Partition previous) {
+        if(previous != null && timestamp >= previous.start && timestamp < previous.end) {
+            return previous;
+        }
+        Map.Entry<Long, Partition> floor = partitions.floorEntry(timestamp);
+        return floor == null || timestamp >= floor.getValue().end ? null : floor.getValue();
+    }
+
+    /**
+     * This method reads the intervals which start in the partition into an IntervalStore.
+     * @param partition partition to be read
+     * @return store of the intervals of the partition
+     * @throws IOException if the sidecar of the partition is missing or stale
+     */
+    public IntervalStore readStore(Partition partition) throws IOException {
+        IntervalStore store = IntervalSidecar.readStore(partition.getIntervalsFile(),
+                IntervalSidecar.fingerprint(partition.getSanitizedFolder()));
+        if(store == null) {
+            throw new IOException("Interval sidecar of partition " + partition.folder.getName()
+                    + " is missing or stale, sanitize the Log files again");
+        }
+        return store;
+    }
+
+    /**
+     * This method queries the partitions which can overlap the time range, the other partitions are not read.
+     * @param startTime start time of the range
+     * @param endTime end time of the range
+     * @param visitor called for every active interval
+     * @return number of partitions queried
+     * @throws IOException
+     */
+    public synchronized int query(long startTime, long endTime, IntervalIndex.Visitor visitor) throws IOException {
+        int queried = 0;
+        //A partition starting after the range only holds intervals starting after the range
+        for(Partition partition : partitions.headMap(endTime, false).values()) {
+            if(!partition.overlaps(startTime, endTime)) {
+                continue;
+            }
+            IntervalIndex index = loaded.get(partition.start);
+            if(index == null) {
+                index = new IntervalIndex(readStore(partition));
+                loaded.put(partition.start, index);
+            }
+            index.query(startTime, endTime, visitor);
+            queried++;
+        }
+        return queried;
+    }
+
+    /**
+     * This method returns the sanitized files of a thread in the partitions with logs in the time range. The
+     * partitions are pruned on the timestamps of their logs, and the threads of a partition are taken from its
+     * threads.idx, so no file is looked up. A thread active in the range without a log in it, e.g. a thread which
+     * started before the range and ends after it, is referred to by the file of its latest logs before the range.
+     * @param threadId thread/user-request id
+     * @param startTime start time of the range
+     * @param endTime end time of the range
+     * @return paths of the files in the order of the partitions
+     * @throws IOException if the threads of a partition cannot be read
+     */
+    public synchronized List<String> getLogFiles(long threadId, long startTime, long endTime) throws IOException {
+        List<String> files = new ArrayList<>();
+        for(Partition partition : partitions.headMap(endTime, true).values()) {
+            if(partition.hasLogs(startTime, endTime) && getThreads(partition).contains(threadId)) {
+                files.add(new File(partition.getSanitizedFolder(), threadId + ".log").getPath());
+            }
+        }
+        if(files.isEmpty()) {
+            for(Partition partition : partitions.headMap(startTime, true).descendingMap().values()) {
+                if(partition.logs > 0 && partition.minTimestamp < startTime && getThreads(partition).contains(
+                        threadId)) {
+                    files.add(new File(partition.getSanitizedFolder(), threadId + ".log").getPath());
+                    break;
+                }
+            }
+        }
+        return files;
+    }
+
+    private LongHashSet getThreads(Partition partition) throws IOException {
+        LongHashSet threads = loadedThreads.get(partition.start);
+        if(threads == null) {
+            //The threads of the logs being written are in threads.idx once the writer is closed
+            threads = partition.readThreads();
+            loadedThreads.put(partition.start, threads);
+        }
+        return threads;
+    }
+
+    /**
+     * This method drops every partition which ends before the timestamp. A partition is dropped by deleting its
+     * folder, no other partition is read or written.
+     * @param before partitions ending at or before this timestamp are dropped
+     * @return number of dropped partitions
+     * @throws IOException if a partition cannot be deleted
+     */
+    public synchronized int purge(long before) throws IOException {
+        int purged = 0;
+        Iterator<Partition> iterator = partitions.headMap(before, false).values().iterator();
+        while(iterator.hasNext()) {
+            Partition partition = iterator.next();
+            if(partition.end > before) {
+                break;
+            }
+            //The metadata is deleted first, a partition which is partially deleted is not opened again
+            delete(new File(partition.folder, META_FILE));
+            deleteFolder(partition.folder);
+            iterator.remove();
+            logged.remove(partition);
+            loaded.remove(partition.start);
+            loadedThreads.remove(partition.start);
+            purged++;
+        }
+        return purged;
+    }
+
+    /**
+     * This method keeps the partitions of the latest retention millis of logs and drops the older partitions. The
+     * retention is measured from the latest log of all the partitions, as the Log files are not written in real time.
+     * @param retentionMillis time of the logs which are kept
+     * @return number of dropped partitions
+     * @throws IOException if a partition cannot be deleted
+     */
+    public synchronized int retain(long retentionMillis) throws IOException {
+        long latest = Long.MIN_VALUE;
+        for(Partition partition : partitions.values()) {
+            latest = Math.max(latest, partition.maxTimestamp);
+        }
+        return latest == Long.MIN_VALUE ? 0 : purge(latest - retentionMillis);
+    }
+
+    private static void deleteFolder(File f) throws IOException {
+        File[] listOfFiles = f.listFiles();
+        if(listOfFiles != null) {
+            for(File child : listOfFiles) {
+                deleteFolder(child);
+            }
+        }
+        delete(f);
+    }
+
+    private static void delete(File f) throws IOException {
+        if(f.exists() && !f.delete()) {
+            throw new IOException("Cannot delete " + f);
+        }
+    }
+
+    /**
+     * PartitionedLogWriter writes every log with the LogWriterPool of its partition. The logs are merged in the order
+     * of their timestamps, so the pool of a partition is closed once a log of a later partition is written.
+     */
+    private class PartitionedLogWriter implements SanitizedLogWriter {
+
+        private final TreeMap<Long, LogWriterPool> pools = new TreeMap<>();
+        private final Set<Partition> written = new HashSet<>();
+        private Partition current;
+        private LogWriterPool pool;
+
+        @Override
+        public void write(LogLine log) throws IOException {
+            long timestamp = log.getTimestamp();
+            if(current == null || timestamp < current.start || timestamp >= current.end) {
+                current = getPartition(timestamp);
+                written.add(current);
+                pool = pools.get(current.start);
+                if(pool == null) {
+                    pool = new LogWriterPool(current.getSanitizedFolder().getPath());
+                    pools.put(current.start, pool);
+                }
+                //Logs of the earlier partitions are done, unless a log is out of order
+                while(pools.firstKey() < current.start) {
+                    pools.pollFirstEntry().getValue().close();
+                }
+            }
+            current.addLog(timestamp, log.getThreadId());
+            pool.write(log);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for(LogWriterPool writer : pools.values()) {
+                writer.close();
+            }
+            pools.clear();
+            synchronized(TimePartitions.this) {
+                for(Partition partition : written) {
+                    partition.save();
+                    loadedThreads.remove(partition.start);
+                }
+                logged.addAll(written);
+            }
+        }
+    }
+}